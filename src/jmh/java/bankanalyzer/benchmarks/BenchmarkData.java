@@ -0,0 +1,65 @@
+package bankanalyzer.benchmarks;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.RateTable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Синтетическая история ставок для замеров: до 1000 банков, по одной записи
+ * на банк в день, значения в правдоподобных диапазонах. Генератор детерминирован,
+ * поэтому результаты разных прогонов сравнимы.
+ */
+final class BenchmarkData {
+    static final int MAX_BANKS = 1000;
+    private static final LocalDate FIRST_DAY = LocalDate.of(2000, 1, 1);
+
+    private BenchmarkData() {
+    }
+
+    static List<BankData> rows(int count) {
+        int banks = Math.min(MAX_BANKS, count);
+        Random random = new Random(42);
+        List<BankData> data = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double deposit = 5 + random.nextDouble() * 15;
+            double loan = deposit + 2 + random.nextDouble() * 10;
+            double ret = deposit + (random.nextDouble() - 0.5) * 4;
+            data.add(new BankData("Банк " + (i % banks), deposit, loan, ret,
+                    FIRST_DAY.plusDays(i / banks), 365));
+        }
+        return data;
+    }
+
+    static RateTable table(int count) {
+        return RateTable.of(rows(count));
+    }
+
+    static Path tempDirectory(String prefix) {
+        try {
+            return Files.createTempDirectory(prefix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path directory) {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package bankanalyzer.benchmarks;
+
+import bankanalyzer.web.BankSource;
+import bankanalyzer.web.BankSources;
+import bankanalyzer.web.RateExtractor;
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Извлечение ставок из сохранённых страниц fixtures/html: полный DOM против потокового разбора.
+ * Сеть не участвует, замеряются только разбор и селекторы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+    private static final String FIXTURES = "fixtures/html";
+
+    @Param({"sberbank", "vtb", "tinkoff", "alfabank", "gazprombank", "raiffeisen", "open", "mkb"})
+    public String bank;
+
+    private BankSource source;
+    private String html;
+
+    @Setup
+    public void prepare() throws Exception {
+        source = BankSources.load().stream()
+                .filter(candidate -> candidate.getId().equals(bank))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Нет описания банка " + bank));
+        html = new String(Files.readAllBytes(Paths.get(FIXTURES, bank + ".html")), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public RateExtractor.Rates dom() {
+        return source.extract(Jsoup.parse(html, source.getUrl()));
+    }
+
+    @Benchmark
+    public RateExtractor.Rates stream() throws Exception {
+        try (StreamParser parser = new StreamParser(Parser.htmlParser())
+                .parse(new StringReader(html), source.getUrl())) {
+            return source.extract(parser);
+        }
+    }
+}
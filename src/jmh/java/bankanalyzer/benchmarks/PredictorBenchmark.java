@@ -0,0 +1,119 @@
+package bankanalyzer.benchmarks;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.ml.RatePredictor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обучение и прогноз RatePredictor. Модель хранится во временном каталоге,
+ * чтобы замеры не трогали models/rate_predictor.zip рабочей копии.
+ */
+public class PredictorBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Training {
+        @Param({"10000", "100000"})
+        public int rows;
+
+        RateTable data;
+        Path directory;
+        RatePredictor predictor;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+            data = BenchmarkData.table(rows);
+            directory = BenchmarkData.tempDirectory("predictor-bench");
+        }
+
+        @Setup(Level.Invocation)
+        public void freshPredictor() {
+            predictor = new RatePredictor(directory.resolve("model-" + System.nanoTime() + ".zip").toString(),
+                    Duration.ofDays(1));
+        }
+
+        @TearDown(Level.Trial)
+        public void cleanup() {
+            BenchmarkData.deleteRecursively(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Inference {
+        @Param({"1000", "10000"})
+        public int rows;
+
+        RateTable table;
+        List<BankData> list;
+        Path directory;
+        RatePredictor predictor;
+
+        @Setup(Level.Trial)
+        public void prepare() {
+            table = BenchmarkData.table(rows);
+            list = table.toList();
+            directory = BenchmarkData.tempDirectory("predictor-bench");
+            predictor = new RatePredictor(directory.resolve("model.zip").toString(), Duration.ofDays(1));
+            predictor.trainModel(BenchmarkData.table(10_000));
+        }
+
+        @TearDown(Level.Trial)
+        public void cleanup() {
+            BenchmarkData.deleteRecursively(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @Fork(1)
+    public RatePredictor trainModel(Training state) {
+        state.predictor.trainModel(state.data);
+        return state.predictor;
+    }
+
+    /**
+     * По одному вызову на строку — как до пакетного прогноза.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public void predictReturnSingle(Inference state, Blackhole blackhole) {
+        for (BankData row : state.list) {
+            blackhole.consume(state.predictor.predictReturn(row));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(1)
+    public double[] predictReturnsBatched(Inference state) {
+        return state.predictor.predictReturns(state.table);
+    }
+}
@@ -0,0 +1,81 @@
+package bankanalyzer.benchmarks;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.ml.InvestmentRecommender;
+import bankanalyzer.ml.RatePredictor;
+import bankanalyzer.ml.RateSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Рекомендации целиком: прогноз по последним ставкам каждого банка и выбор лучших.
+ * Путь через снимок замеряется дважды — с попаданием в кэш и с новой версией снимка на каждый вызов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecommenderBenchmark {
+    private static final double AMOUNT = 100_000;
+    private static final int TERM = 365;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private RateTable table;
+    private Path directory;
+    private InvestmentRecommender recommender;
+    private RateSnapshot snapshot;
+    private double[] predictions;
+    private long version;
+
+    @Setup
+    public void prepare() {
+        table = BenchmarkData.table(rows);
+        directory = BenchmarkData.tempDirectory("recommender-bench");
+        RatePredictor predictor = new RatePredictor(directory.resolve("model.zip").toString(), Duration.ofDays(1));
+        recommender = new InvestmentRecommender(predictor, InvestmentRecommender.DEFAULT_TOP_K);
+        // Первый снимок обучает модель на этой таблице, дальше ensureTrained ничего не делает
+        snapshot = recommender.createSnapshot(table, ++version);
+        predictions = predictor.predictReturns(table);
+    }
+
+    @TearDown
+    public void cleanup() {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<BankData> endToEnd() {
+        return recommender.getInvestmentRecommendations(table, AMOUNT, TERM);
+    }
+
+    @Benchmark
+    public List<BankData> snapshotCached() {
+        return recommender.getInvestmentRecommendations(snapshot, TERM);
+    }
+
+    @Benchmark
+    public List<BankData> snapshotUncached() {
+        RateSnapshot fresh = new RateSnapshot(++version, table, predictions);
+        return recommender.getInvestmentRecommendations(fresh, TERM);
+    }
+}
@@ -0,0 +1,73 @@
+package bankanalyzer.benchmarks;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.DataStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение и запись журнала DataStorage на 10^3..10^7 строк.
+ * Каждый вызов — холодная операция над целым файлом, поэтому режим SingleShotTime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class StorageBenchmark {
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private List<BankData> data;
+    private Path directory;
+    private Path loadFile;
+    private Path saveFile;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        data = BenchmarkData.rows(rows);
+        directory = BenchmarkData.tempDirectory("storage-bench");
+        loadFile = directory.resolve("load.csv");
+        new DataStorage(loadFile).saveData(data);
+    }
+
+    @Setup(Level.Invocation)
+    public void freshSaveFile() throws Exception {
+        saveFile = directory.resolve("save.csv");
+        Files.deleteIfExists(saveFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() {
+        BenchmarkData.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public List<BankData> loadData() {
+        return new DataStorage(loadFile).loadData();
+    }
+
+    @Benchmark
+    public DataStorage saveData() {
+        DataStorage storage = new DataStorage(saveFile);
+        storage.saveData(data);
+        return storage;
+    }
+}
@@ -2,15 +2,70 @@ package bankanalyzer;
 
 import bankanalyzer.web.WebScraper;
 import bankanalyzer.ml.InvestmentRecommender;
+import bankanalyzer.ml.PortfolioAllocation;
+import bankanalyzer.ml.PortfolioAllocator;
+import bankanalyzer.ml.RateSnapshot;
+import bankanalyzer.ml.RecommendationCache;
 import bankanalyzer.data.BankData;
 import bankanalyzer.data.DataStorage;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.data.TopRows;
+import bankanalyzer.metrics.Metrics;
+import bankanalyzer.service.ApiServer;
+import bankanalyzer.service.RefreshDaemon;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 public class Main {
+    private static final int DEFAULT_API_PORT = 8080;
+    private static final Duration METRICS_DUMP_PERIOD = Duration.ofSeconds(15);
+    private static final String USAGE = "Использование: java bankanalyzer.Main [--top=N] [--min-banks=N]"
+            + " [--insurance-cap=руб.] [--metrics-file=путь]\n"
+            + "       java bankanalyzer.Main --daemon [--refresh-minutes=N] [--jitter=0.1] [--port=N]"
+            + " [--no-api] [--top=N] [--min-banks=N] [--insurance-cap=руб.] [--metrics-file=путь]";
+
     public static void main(String[] args) {
+        Metrics.global().enableJmx();
+        for (String arg : args) {
+            if (arg.equals("--daemon")) {
+                runDaemon(args);
+                return;
+            }
+        }
+        runOnce(args);
+    }
+
+    /**
+     * Ошибка в параметрах командной строки: печатаем её вместе с подсказкой и выходим.
+     */
+    private static void exitWithUsage(IllegalArgumentException e) {
+        System.err.println("❌ " + e.getMessage());
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    /**
+     * Разовый запуск: сбор, анализ и отчёт. Параметр --top=N — число рекомендаций (по умолчанию 5),
+     * --min-banks=N и --insurance-cap=руб. — ограничения распределения суммы по банкам,
+     * --metrics-file=путь — записать метрики в формате Prometheus по завершении.
+     */
+    private static void runOnce(String[] args) {
+        InvestmentRecommender recommender;
+        PortfolioAllocator allocator;
+        try {
+            recommender = new InvestmentRecommender(topK(args));
+            allocator = allocator(args);
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e);
+            return;
+        }
         WebScraper scraper = new WebScraper();
-        InvestmentRecommender recommender = new InvestmentRecommender();
         DataStorage storage = new DataStorage();
 
         Scanner scanner = new Scanner(System.in);
@@ -30,16 +85,17 @@ public class Main {
         List<BankData> currentData = scraper.scrapeBankRates();
         System.out.println("   Собрано текущих данных: " + currentData.size() + " банков");
 
-        // Объединяем данные
-        if (!historicalData.isEmpty()) {
-            currentData.addAll(historicalData);
-            System.out.println("   Общее количество данных для анализа: " + currentData.size());
-        }
-
-        // Сохраняем обновленные данные
+        // Сохраняем только новые наблюдения: история уже лежит в журнале
         System.out.println("💾 Сохранение данных...");
         storage.saveData(currentData);
 
+        // Объединяем данные: журнал уже держит последнее наблюдение по каждому ключу,
+        // поэтому повторный запуск в тот же день не задваивает строки
+        List<BankData> allData = storage.currentData();
+        System.out.println("   Общее количество данных для анализа: " + allData.size());
+
+        RateTable rates = RateTable.of(allData);
+
         // Получаем входные данные от пользователя
         System.out.println("\n💵 Введите параметры инвестирования:");
         System.out.print("   Сумма для инвестирования (руб.): ");
@@ -53,13 +109,17 @@ public class Main {
         try {
             long startTime = System.currentTimeMillis();
 
-            List<BankData> recommendations = recommender.getInvestmentRecommendations(currentData, amount, term);
+            // Один снимок на рекомендации и распределение: прогноз считается один раз
+            RateSnapshot snapshot = recommender.createSnapshot(rates, 0);
+            List<BankData> recommendations = recommender.getInvestmentRecommendations(snapshot, term);
             String report = recommender.generateRecommendationReport(recommendations, amount);
+            PortfolioAllocation allocation = recommender.allocatePortfolio(snapshot, amount, term, allocator);
 
             long endTime = System.currentTimeMillis();
             double analysisTime = (endTime - startTime) / 1000.0;
 
             System.out.println(report);
+            System.out.println(recommender.generateAllocationReport(allocation));
             System.out.printf("⏱️  Время анализа: %.2f секунд\n", analysisTime);
 
             // Дополнительная информация по лучшему варианту
@@ -78,20 +138,198 @@ public class Main {
             System.err.println("❌ Ошибка при анализе данных: " + e.getMessage());
             System.out.println("🔄 Используются базовые рекомендации...");
 
-            // Резервные рекомендации
-            List<BankData> basicRecommendations = currentData.stream()
-                    .sorted((a, b) -> Double.compare(b.getDepositRate(), a.getDepositRate()))
-                    .limit(3)
-                    .collect(java.util.stream.Collectors.toList());
+            // Резервные рекомендации: последние ставки банков по убыванию ставки вклада
+            List<BankData> basicRecommendations = new ArrayList<>();
+            int[] latest = rates.latestRowPerBank();
+            for (int row : TopRows.select(latest, rates::depositRate, recommender.getTopK(), false)) {
+                basicRecommendations.add(rates.get(row));
+            }
 
             String basicReport = recommender.generateRecommendationReport(basicRecommendations, amount);
             System.out.println(basicReport);
         }
 
+        Path metricsFile = metricsFile(args);
+        if (metricsFile != null) {
+            try {
+                Metrics.global().writeTo(metricsFile);
+            } catch (IOException e) {
+                System.err.println("❌ Ошибка записи метрик: " + e.getMessage());
+            }
+        }
+
         System.out.println("\n✨ Анализ завершен. Хороших инвестиций!");
         scanner.close();
     }
 
+    /**
+     * Долгоживущий режим: данные и модель обновляются в фоне по расписанию,
+     * а запросы обслуживаются из текущего снимка в памяти — из консоли и через HTTP API.
+     * Параметры: --refresh-minutes=N (по умолчанию 60), --jitter=0.1,
+     * --port=N (по умолчанию 8080), --no-api, --top=N, --min-banks=N, --insurance-cap=руб., --metrics-file=путь
+     * (метрики в формате Prometheus, обновляются каждые 15 с; также доступны на /metrics и в JMX).
+     */
+    private static void runDaemon(String[] args) {
+        Duration interval = RefreshDaemon.DEFAULT_INTERVAL;
+        double jitter = RefreshDaemon.DEFAULT_JITTER;
+        int port = DEFAULT_API_PORT;
+        boolean api = true;
+        // Без TCP_NODELAY заголовки и тело маленького ответа API уходят разными пакетами,
+        // и задержанное подтверждение добавляет к каждому запросу ~40 мс.
+        // Свойство читается при создании первого HttpServer, поэтому задаём его до запуска API
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        InvestmentRecommender recommender;
+        PortfolioAllocator allocator;
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--refresh-minutes=")) {
+                    long minutes = longOption(arg, "--refresh-minutes=");
+                    requireOption(minutes >= 1, "--refresh-minutes должен быть не меньше 1");
+                    interval = Duration.ofMinutes(minutes);
+                } else if (arg.startsWith("--jitter=")) {
+                    jitter = doubleOption(arg, "--jitter=");
+                    requireOption(jitter >= 0 && jitter < 1, "--jitter должен быть в диапазоне [0, 1)");
+                } else if (arg.startsWith("--port=")) {
+                    port = (int) longOption(arg, "--port=");
+                    requireOption(port >= 0 && port <= 65535, "--port должен быть в диапазоне 0..65535");
+                } else if (arg.equals("--no-api")) {
+                    api = false;
+                }
+            }
+            recommender = new InvestmentRecommender(topK(args));
+            allocator = allocator(args);
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e);
+            return;
+        }
+
+        Path metricsFile = metricsFile(args);
+        Metrics.PeriodicDump metricsDump = metricsFile != null
+                ? Metrics.global().dumpPeriodically(metricsFile, METRICS_DUMP_PERIOD) : null;
+        try (RefreshDaemon daemon = new RefreshDaemon(new WebScraper(), new DataStorage(), recommender,
+                interval, jitter);
+             ApiServer server = api ? new ApiServer(port, daemon::current, recommender) : null) {
+            System.out.println("🔄 Фоновое обновление каждые " + interval.toMinutes() + " мин.");
+            daemon.start();
+            if (server != null) {
+                server.start();
+            }
+
+            Scanner scanner = new Scanner(System.in);
+            while (true) {
+                System.out.print("\n💵 Сумма и срок (дней) через пробел, q — выход: ");
+                if (!scanner.hasNext() && server != null) {
+                    // Консоль закрыта (запуск как службы): работаем, пока процесс не остановят
+                    System.out.println("\nКонсоль закрыта, API продолжает работу");
+                    awaitShutdown();
+                    break;
+                }
+                if (!scanner.hasNextDouble()) {
+                    break;
+                }
+                double amount = scanner.nextDouble();
+                if (!scanner.hasNextInt()) {
+                    break;
+                }
+                int term = scanner.nextInt();
+
+                long start = System.nanoTime();
+                RateSnapshot snapshot = daemon.current();
+                List<BankData> recommendations = recommender.getInvestmentRecommendations(snapshot, term);
+                double millis = (System.nanoTime() - start) / 1e6;
+
+                System.out.println(recommender.generateRecommendationReport(recommendations, amount));
+                System.out.println(recommender.generateAllocationReport(
+                        recommender.allocatePortfolio(snapshot, amount, term, allocator)));
+                RecommendationCache cache = recommender.getCache();
+                System.out.printf("⏱️  Ответ по снимку #%d за %.2f мс (кэш: %d попаданий, %d промахов)%n",
+                        snapshot.getVersion(), millis, cache.getHits(), cache.getMisses());
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Не удалось запустить API: " + e.getMessage());
+        } finally {
+            if (metricsDump != null) {
+                metricsDump.close();
+            }
+        }
+        System.out.println("\n✨ Работа завершена. Хороших инвестиций!");
+    }
+
+    private static int topK(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--top=")) {
+                long topK = longOption(arg, "--top=");
+                requireOption(topK >= 1 && topK <= Integer.MAX_VALUE, "--top должен быть положительным");
+                return (int) topK;
+            }
+        }
+        return InvestmentRecommender.DEFAULT_TOP_K;
+    }
+
+    private static PortfolioAllocator allocator(String[] args) {
+        double insuranceCap = PortfolioAllocator.DEFAULT_INSURANCE_CAP;
+        int minBanks = PortfolioAllocator.DEFAULT_MIN_BANKS;
+        for (String arg : args) {
+            if (arg.startsWith("--insurance-cap=")) {
+                insuranceCap = doubleOption(arg, "--insurance-cap=");
+                requireOption(insuranceCap > 0 && Double.isFinite(insuranceCap),
+                        "--insurance-cap должен быть положительной суммой");
+            } else if (arg.startsWith("--min-banks=")) {
+                long value = longOption(arg, "--min-banks=");
+                requireOption(value >= 1 && value <= Integer.MAX_VALUE, "--min-banks должен быть положительным");
+                minBanks = (int) value;
+            }
+        }
+        return new PortfolioAllocator(insuranceCap, minBanks, PortfolioAllocator.DEFAULT_TERM_TOLERANCE);
+    }
+
+    private static long longOption(String arg, String prefix) {
+        String value = arg.substring(prefix.length());
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(prefix.substring(0, prefix.length() - 1)
+                    + " должен быть целым числом: " + value);
+        }
+    }
+
+    private static double doubleOption(String arg, String prefix) {
+        String value = arg.substring(prefix.length());
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(prefix.substring(0, prefix.length() - 1)
+                    + " должен быть числом: " + value);
+        }
+    }
+
+    private static void requireOption(boolean valid, String message) {
+        if (!valid) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static Path metricsFile(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--metrics-file=")) {
+                return Paths.get(arg.substring("--metrics-file=".length()));
+            }
+        }
+        return null;
+    }
+
+    private static void awaitShutdown() {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private static void saveRecommendations(List<BankData> recommendations, double amount) {
         try (java.io.FileWriter writer = new java.io.FileWriter("рекомендации.txt")) {
             writer.write("Рекомендации по инвестированию\n");
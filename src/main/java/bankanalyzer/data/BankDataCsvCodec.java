@@ -0,0 +1,505 @@
+package bankanalyzer.data;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.function.Consumer;
+
+/**
+ * Потоковый кодек CSV для {@link BankData}, не зависящий от локали JVM.
+ * Числа пишутся с точкой и двумя знаками после неё, поля с запятыми и кавычками
+ * экранируются по RFC 4180. Чтение разбирает числа и даты прямо из буфера символов,
+ * без промежуточных строк и массивов String[]. Экземпляр не потокобезопасен.
+ */
+public class BankDataCsvCodec {
+    public static final String HEADER = "bankName,depositRate,loanRate,investmentReturn,date,termDays";
+
+    private static final int FIELD_COUNT = 6;
+    // Строки, записанные через printf в локали ru_RU: "7,74" вместо "7.74"
+    private static final int LEGACY_FIELD_COUNT = 9;
+    private static final int MAX_FIELDS = 16;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final StringBuilder line = new StringBuilder(96);
+
+    // Состояние разбора текущей записи
+    private char[] record = new char[256];
+    private int recordLength;
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private final boolean[] fieldQuoted = new boolean[MAX_FIELDS];
+    private int fieldCount;
+    private boolean overflow;
+    // Начало текущего поля; ведётся и после переполнения, чтобы кавычки разбирались до конца записи
+    private int currentFieldStart;
+
+    private final NameTable names = new NameTable();
+    private LocalDate lastDate;
+    private int lastDateKey = -1;
+
+    @Getter
+    public static final class ReadStats {
+        private long rowsRead;
+        private long rowsRejected;
+        private long rowsRecovered;
+        private long firstRejectedLine;
+    }
+
+    private static final class RowRejected extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        RowRejected() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final RowRejected REJECTED = new RowRejected();
+
+    public void writeHeader(Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    public void writeRow(Writer out, BankData row) throws IOException {
+        line.setLength(0);
+        appendName(row.getBankName());
+        line.append(',');
+        appendDecimal(row.getDepositRate());
+        line.append(',');
+        appendDecimal(row.getLoanRate());
+        line.append(',');
+        appendDecimal(row.getInvestmentReturn());
+        line.append(',');
+        appendDate(row.getDate());
+        line.append(',');
+        line.append(row.getTermDays());
+        line.append('\n');
+        out.append(line);
+    }
+
+    /**
+     * Читает записи и передаёт каждую корректную в sink. Некорректные строки
+     * не прерывают чтение, а учитываются в статистике.
+     */
+    public ReadStats read(Reader in, Consumer<BankData> sink) throws IOException {
+        ReadStats stats = new ReadStats();
+        char[] buffer = new char[BUFFER_SIZE];
+
+        long lineNumber = 1;
+        long recordLine = 1;
+        boolean inQuotes = false;
+        boolean quoteInQuoted = false;
+        beginRecord();
+
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            for (int i = 0; i < n; i++) {
+                char c = buffer[i];
+
+                if (inQuotes) {
+                    if (quoteInQuoted) {
+                        quoteInQuoted = false;
+                        if (c == '"') {
+                            appendChar('"');
+                            continue;
+                        }
+                        inQuotes = false;
+                        // закрывающая кавычка: символ обрабатывается ниже как обычный
+                    } else if (c == '"') {
+                        quoteInQuoted = true;
+                        continue;
+                    } else {
+                        if (c == '\n') lineNumber++;
+                        appendChar(c);
+                        continue;
+                    }
+                }
+
+                if (c == ',') {
+                    endField();
+                } else if (c == '\n') {
+                    endField();
+                    handleRecord(sink, stats, recordLine);
+                    lineNumber++;
+                    recordLine = lineNumber;
+                    beginRecord();
+                } else if (c == '"' && recordLength == currentFieldStart) {
+                    inQuotes = true;
+                    markQuoted();
+                } else if (c != '\r') {
+                    appendChar(c);
+                }
+            }
+        }
+
+        if (recordLength > 0 || fieldCount > 0) {
+            endField();
+            handleRecord(sink, stats, recordLine);
+        }
+        return stats;
+    }
+
+    private void handleRecord(Consumer<BankData> sink, ReadStats stats, long lineNumber) {
+        if (fieldCount == 1 && fieldEnd[0] == fieldStart[0]) {
+            return; // пустая строка
+        }
+        if (lineNumber == 1 && fieldEquals(0, "bankName")) {
+            return; // заголовок
+        }
+
+        try {
+            if (overflow) {
+                throw REJECTED;
+            }
+            if (fieldCount == FIELD_COUNT) {
+                sink.accept(new BankData(
+                        parseName(0),
+                        parseDecimal(1),
+                        parseDecimal(2),
+                        parseDecimal(3),
+                        parseDate(4),
+                        parseInt(5)));
+            } else if (fieldCount == LEGACY_FIELD_COUNT && !fieldQuoted[0]) {
+                sink.accept(new BankData(
+                        parseName(0),
+                        parseLegacyDecimal(1),
+                        parseLegacyDecimal(3),
+                        parseLegacyDecimal(5),
+                        parseDate(7),
+                        parseInt(8)));
+                stats.rowsRecovered++;
+            } else {
+                throw REJECTED;
+            }
+            stats.rowsRead++;
+        } catch (RowRejected e) {
+            if (stats.rowsRejected++ == 0) {
+                stats.firstRejectedLine = lineNumber;
+            }
+        }
+    }
+
+    // ---- разбор полей ----
+
+    private String parseName(int field) throws RowRejected {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start == end) {
+            throw REJECTED;
+        }
+        return names.intern(record, start, end);
+    }
+
+    private double parseDecimal(int field) throws RowRejected {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start == end) {
+            throw REJECTED;
+        }
+
+        int i = start;
+        boolean negative = false;
+        if (record[i] == '-' || record[i] == '+') {
+            negative = record[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            char c = record[i];
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return parseDecimalSlow(start, end);
+            }
+        }
+        if (digits == 0) {
+            throw REJECTED;
+        }
+        if (digits > 15 || scale >= POW10.length) {
+            return parseDecimalSlow(start, end);
+        }
+
+        // Оба операнда точно представимы в double, поэтому деление округляется корректно
+        double value = scale > 0 ? mantissa / POW10[scale] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseDecimalSlow(int start, int end) throws RowRejected {
+        try {
+            return Double.parseDouble(new String(record, start, end - start));
+        } catch (NumberFormatException e) {
+            throw REJECTED;
+        }
+    }
+
+    private double parseLegacyDecimal(int field) throws RowRejected {
+        long integer = parseDigits(field);
+        int fractionDigits = fieldEnd[field + 1] - fieldStart[field + 1];
+        if (fractionDigits == 0 || fractionDigits > 6) {
+            throw REJECTED;
+        }
+        long fraction = parseDigits(field + 1);
+        return (integer * (long) POW10[fractionDigits] + fraction) / POW10[fractionDigits];
+    }
+
+    private int parseInt(int field) throws RowRejected {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = end > start && record[start] == '-';
+        if (negative) {
+            start++;
+        }
+        if (start == end || end - start > 9) {
+            throw REJECTED;
+        }
+        int value = digits(start, end - start);
+        return negative ? -value : value;
+    }
+
+    private long parseDigits(int field) throws RowRejected {
+        int start = fieldStart[field];
+        int end = fieldEnd[field];
+        if (start == end || end - start > 18) {
+            throw REJECTED;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = record[i];
+            if (c < '0' || c > '9') {
+                throw REJECTED;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private LocalDate parseDate(int field) throws RowRejected {
+        int s = fieldStart[field];
+        if (fieldEnd[field] - s != 10 || record[s + 4] != '-' || record[s + 7] != '-') {
+            throw REJECTED;
+        }
+        int year = digits(s, 4);
+        int month = digits(s + 5, 2);
+        int day = digits(s + 8, 2);
+
+        // В истории подряд идут строки за одну дату, переиспользуем объект
+        int key = (year * 100 + month) * 100 + day;
+        if (key == lastDateKey) {
+            return lastDate;
+        }
+        try {
+            lastDate = LocalDate.of(year, month, day);
+            lastDateKey = key;
+            return lastDate;
+        } catch (DateTimeException e) {
+            throw REJECTED;
+        }
+    }
+
+    private int digits(int start, int count) throws RowRejected {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = record[i];
+            if (c < '0' || c > '9') {
+                throw REJECTED;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // ---- буфер записи ----
+
+    private void beginRecord() {
+        recordLength = 0;
+        fieldCount = 0;
+        overflow = false;
+        currentFieldStart = 0;
+        fieldStart[0] = 0;
+        fieldQuoted[0] = false;
+    }
+
+    private void appendChar(char c) {
+        if (recordLength == record.length) {
+            char[] grown = new char[record.length * 2];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        record[recordLength++] = c;
+    }
+
+    private void markQuoted() {
+        if (!overflow) {
+            fieldQuoted[fieldCount] = true;
+        }
+    }
+
+    private void endField() {
+        currentFieldStart = recordLength;
+        if (overflow) {
+            return;
+        }
+        fieldEnd[fieldCount] = recordLength;
+        fieldCount++;
+        if (fieldCount == MAX_FIELDS) {
+            overflow = true;
+            return;
+        }
+        fieldStart[fieldCount] = recordLength;
+        fieldQuoted[fieldCount] = false;
+    }
+
+    private boolean fieldEquals(int field, String value) {
+        int start = fieldStart[field];
+        if (fieldEnd[field] - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (record[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ---- запись ----
+
+    private void appendName(String name) {
+        boolean needsQuotes = name.isEmpty() || name.charAt(0) == ' ';
+        for (int i = 0; i < name.length() && !needsQuotes; i++) {
+            char c = name.charAt(i);
+            needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!needsQuotes) {
+            line.append(name);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private void appendDecimal(double value) {
+        if (!Double.isFinite(value) || Math.abs(value) >= 1e15) {
+            line.append(value);
+            return;
+        }
+        long cents = Math.round(value * 100);
+        if (cents < 0) {
+            line.append('-');
+            cents = -cents;
+        }
+        line.append(cents / 100).append('.');
+        long fraction = cents % 100;
+        if (fraction < 10) {
+            line.append('0');
+        }
+        line.append(fraction);
+    }
+
+    private void appendDate(LocalDate date) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            line.append(date);
+            return;
+        }
+        appendPadded(year, 4);
+        line.append('-');
+        appendPadded(date.getMonthValue(), 2);
+        line.append('-');
+        appendPadded(date.getDayOfMonth(), 2);
+    }
+
+    private void appendPadded(int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit) {
+                line.append('0');
+            }
+        }
+        line.append(value);
+    }
+
+    /**
+     * Словарь названий банков: одно и то же название встречается в истории тысячи раз,
+     * поэтому ищем его прямо по символам буфера и создаём строку только при первой встрече.
+     */
+    private static final class NameTable {
+        private String[] slots = new String[64];
+        private int size;
+
+        String intern(char[] chars, int start, int end) {
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + chars[i];
+            }
+
+            int mask = slots.length - 1;
+            int index = mix(hash) & mask;
+            String candidate;
+            while ((candidate = slots[index]) != null) {
+                if (candidate.hashCode() == hash && matches(candidate, chars, start, end)) {
+                    return candidate;
+                }
+                index = (index + 1) & mask;
+            }
+
+            String name = new String(chars, start, end - start);
+            slots[index] = name;
+            if (++size * 2 > slots.length) {
+                rehash();
+            }
+            return name;
+        }
+
+        private static boolean matches(String name, char[] chars, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            String[] old = slots;
+            slots = new String[old.length * 2];
+            int mask = slots.length - 1;
+            for (String name : old) {
+                if (name == null) continue;
+                int index = mix(name.hashCode()) & mask;
+                while (slots[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = name;
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package bankanalyzer.data;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Бинарный колоночный снимок истории ставок. Читается через {@link MappedByteBuffer},
+ * колонки отдаются как представления поверх отображённого файла без копирования.
+ *
+ * <pre>
+ * Заголовок (48 байт, little-endian):
+ *   int    magic        'BRCS'
+ *   int    version
+ *   int    rowCount
+ *   int    dictCount    число названий банков
+ *   long   dictOffset   смещение словаря
+ *   long   columnsOffset смещение колонок (выровнено на 8)
+ *   long   sourceOffset  длина CSV-журнала, вошедшая в снимок; -1, если неизвестна
+ *   long   sourceChecksum CRC32 последних байт журнала перед sourceOffset
+ * Словарь: dictCount записей {int длина, UTF-8 байты}
+ * Колонки: int bankId[rowCount], int epochDay[rowCount], int termDays[rowCount],
+ *          (выравнивание на 8), double depositRate[rowCount],
+ *          double loanRate[rowCount], double investmentReturn[rowCount]
+ * </pre>
+ * По sourceOffset и sourceChecksum {@link DataStorage} проверяет, что снимок
+ * соответствует журналу, и дочитывает только строки, дописанные после него.
+ */
+public class ColumnarSnapshot {
+    public static final String SNAPSHOT_FILE = "data/bank_data.bin";
+
+    private static final int MAGIC = 0x53435242; // "BRCS" в little-endian
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 48;
+    private static final int CHECKSUM_WINDOW = 4096;
+
+    private final int rowCount;
+    private final long sourceOffset;
+    private final long sourceChecksum;
+    private final String[] bankNames;
+    private final IntBuffer bankIds;
+    private final IntBuffer epochDays;
+    private final IntBuffer termDays;
+    private final DoubleBuffer depositRates;
+    private final DoubleBuffer loanRates;
+    private final DoubleBuffer investmentReturns;
+
+    private ColumnarSnapshot(int rowCount, long sourceOffset, long sourceChecksum,
+                             String[] bankNames, ByteBuffer columns) {
+        this.rowCount = rowCount;
+        this.sourceOffset = sourceOffset;
+        this.sourceChecksum = sourceChecksum;
+        this.bankNames = bankNames;
+
+        int intBytes = rowCount * Integer.BYTES;
+        int doubleBytes = rowCount * Double.BYTES;
+        int doublesStart = align8(3 * intBytes);
+
+        this.bankIds = slice(columns, 0, intBytes).asIntBuffer();
+        this.epochDays = slice(columns, intBytes, intBytes).asIntBuffer();
+        this.termDays = slice(columns, 2 * intBytes, intBytes).asIntBuffer();
+        this.depositRates = slice(columns, doublesStart, doubleBytes).asDoubleBuffer();
+        this.loanRates = slice(columns, doublesStart + doubleBytes, doubleBytes).asDoubleBuffer();
+        this.investmentReturns = slice(columns, doublesStart + 2 * doubleBytes, doubleBytes).asDoubleBuffer();
+    }
+
+    /**
+     * Отображает файл снимка в память. Данные колонок не копируются
+     * и подгружаются операционной системой по мере обращения.
+     */
+    public static ColumnarSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.remaining() < HEADER_SIZE || mapped.getInt(0) != MAGIC) {
+                throw new IOException("Файл не является снимком истории ставок: " + file);
+            }
+            int version = mapped.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия снимка " + version + ": " + file);
+            }
+            int rowCount = mapped.getInt(8);
+            int dictCount = mapped.getInt(12);
+            long dictOffset = mapped.getLong(16);
+            long columnsOffset = mapped.getLong(24);
+            long sourceOffset = mapped.getLong(32);
+            long sourceChecksum = mapped.getLong(40);
+
+            long expectedEnd = columnsOffset + align8(3L * rowCount * Integer.BYTES) + 3L * rowCount * Double.BYTES;
+            if (rowCount < 0 || dictCount < 0
+                    || dictOffset < HEADER_SIZE || columnsOffset < dictOffset
+                    || expectedEnd > mapped.capacity()) {
+                throw corrupted(file);
+            }
+
+            String[] names = new String[dictCount];
+            long position = dictOffset;
+            for (int i = 0; i < dictCount; i++) {
+                if (position + Integer.BYTES > columnsOffset) {
+                    throw corrupted(file);
+                }
+                int length = mapped.getInt((int) position);
+                position += Integer.BYTES;
+                if (length < 0 || position + length > columnsOffset) {
+                    throw corrupted(file);
+                }
+                byte[] bytes = new byte[length];
+                mapped.position((int) position);
+                mapped.get(bytes);
+                names[i] = new String(bytes, StandardCharsets.UTF_8);
+                position += length;
+            }
+
+            ByteBuffer columns = slice(mapped, (int) columnsOffset, mapped.capacity() - (int) columnsOffset);
+            ColumnarSnapshot snapshot = new ColumnarSnapshot(rowCount, sourceOffset, sourceChecksum, names, columns);
+            // Иначе битый номер банка всплывёт только при обращении к строке
+            for (int row = 0; row < rowCount; row++) {
+                int bankId = snapshot.bankIds.get(row);
+                if (bankId < 0 || bankId >= dictCount) {
+                    throw corrupted(file);
+                }
+            }
+            return snapshot;
+        }
+    }
+
+    private static IOException corrupted(Path file) {
+        return new IOException("Снимок повреждён или обрезан: " + file);
+    }
+
+    public static void write(List<BankData> data, Path file) throws IOException {
+        write(data, file, -1, 0);
+    }
+
+    /**
+     * @param sourceOffset   длина журнала, строки которого вошли в снимок
+     * @param sourceChecksum {@link #sourceChecksum} журнала на этой длине
+     */
+    public static void write(List<BankData> data, Path file, long sourceOffset, long sourceChecksum)
+            throws IOException {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int rows = data.size();
+        int[] ids = new int[rows];
+        int[] days = new int[rows];
+        int[] terms = new int[rows];
+        double[] deposits = new double[rows];
+        double[] loans = new double[rows];
+        double[] returns = new double[rows];
+
+        for (int i = 0; i < rows; i++) {
+            BankData item = data.get(i);
+            ids[i] = dictionary.computeIfAbsent(item.getBankName(), name -> dictionary.size());
+            days[i] = (int) item.getDate().toEpochDay();
+            terms[i] = item.getTermDays();
+            deposits[i] = item.getDepositRate();
+            loans[i] = item.getLoanRate();
+            returns[i] = item.getInvestmentReturn();
+        }
+
+        List<byte[]> encodedNames = new ArrayList<>(dictionary.size());
+        int dictBytes = 0;
+        for (String name : dictionary.keySet()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encodedNames.add(bytes);
+            dictBytes += Integer.BYTES + bytes.length;
+        }
+
+        long columnsOffset = align8(HEADER_SIZE + dictBytes);
+        long intSection = align8(3L * rows * Integer.BYTES);
+        long total = columnsOffset + intSection + 3L * rows * Double.BYTES;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Снимок слишком велик: " + total + " байт");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(rows)
+                .putInt(dictionary.size())
+                .putLong(HEADER_SIZE)
+                .putLong(columnsOffset)
+                .putLong(sourceOffset)
+                .putLong(sourceChecksum);
+        for (byte[] bytes : encodedNames) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+
+        buffer.position((int) columnsOffset);
+        buffer.asIntBuffer().put(ids).put(days).put(terms);
+        buffer.position((int) (columnsOffset + intSection));
+        buffer.asDoubleBuffer().put(deposits).put(loans).put(returns);
+        buffer.rewind();
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Конвертирует CSV-журнал в снимок. Для повторяющихся ключей остаётся
+     * последнее наблюдение, как и при обычной загрузке журнала.
+     */
+    public static int convertCsv(Path csvFile, Path snapshotFile) throws IOException {
+        // Читаем кодеком напрямую: DataStorage может запустить уплотнение и переписать исходный файл
+        Map<DataStorage.RowKey, BankData> latest = new LinkedHashMap<>();
+        long sourceOffset = Files.size(csvFile);
+        // Дописанное после замера длины в снимок не попадает и будет дочитано из журнала
+        try (Reader reader = new InputStreamReader(
+                new BoundedInputStream(Files.newInputStream(csvFile), sourceOffset), StandardCharsets.UTF_8)) {
+            new BankDataCsvCodec().read(reader, row -> latest.put(DataStorage.RowKey.of(row), row));
+        }
+        List<BankData> rows = new ArrayList<>(latest.values());
+        write(rows, snapshotFile, sourceOffset, sourceChecksum(csvFile, sourceOffset));
+        return rows.size();
+    }
+
+    /**
+     * CRC32 последних байт файла перед offset: отличает журнал, по которому построен снимок,
+     * от переписанного уплотнением. -1, если файл короче offset.
+     */
+    public static long sourceChecksum(Path source, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            if (offset < 0 || channel.size() < offset) {
+                return -1;
+            }
+            int length = (int) Math.min(offset, CHECKSUM_WINDOW);
+            ByteBuffer window = ByteBuffer.allocate(length);
+            long position = offset - length;
+            while (window.hasRemaining()) {
+                int read = channel.read(window, position + window.position());
+                if (read < 0) {
+                    return -1;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(window.flip());
+            return crc.getValue();
+        }
+    }
+
+    public long getSourceOffset() {
+        return sourceOffset;
+    }
+
+    public long getSourceChecksum() {
+        return sourceChecksum;
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public int bankCount() {
+        return bankNames.length;
+    }
+
+    public String bankName(int row) {
+        return bankNames[bankIds.get(row)];
+    }
+
+    public int bankId(int row) {
+        return bankIds.get(row);
+    }
+
+    public String bankNameById(int bankId) {
+        return bankNames[bankId];
+    }
+
+    public int epochDay(int row) {
+        return epochDays.get(row);
+    }
+
+    public int termDays(int row) {
+        return termDays.get(row);
+    }
+
+    public double depositRate(int row) {
+        return depositRates.get(row);
+    }
+
+    public double loanRate(int row) {
+        return loanRates.get(row);
+    }
+
+    public double investmentReturn(int row) {
+        return investmentReturns.get(row);
+    }
+
+    public BankData get(int row) {
+        return new BankData(
+                bankName(row),
+                depositRate(row),
+                loanRate(row),
+                investmentReturn(row),
+                LocalDate.ofEpochDay(epochDay(row)),
+                termDays(row));
+    }
+
+    /**
+     * Копирует колонки снимка в {@link RateTable} блочными чтениями из буферов.
+     */
+    public RateTable toRateTable() {
+        int[] ids = new int[rowCount];
+        int[] days = new int[rowCount];
+        int[] terms = new int[rowCount];
+        double[] deposits = new double[rowCount];
+        double[] loans = new double[rowCount];
+        double[] returns = new double[rowCount];
+        bankIds.duplicate().get(ids);
+        epochDays.duplicate().get(days);
+        termDays.duplicate().get(terms);
+        depositRates.duplicate().get(deposits);
+        loanRates.duplicate().get(loans);
+        investmentReturns.duplicate().get(returns);
+        return new RateTable(bankNames.clone(), ids, days, terms, deposits, loans, returns);
+    }
+
+    public List<BankData> toList() {
+        List<BankData> result = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    private static ByteBuffer slice(ByteBuffer source, int offset, int length) {
+        ByteBuffer duplicate = source.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int align8(int value) {
+        return (value + 7) & ~7;
+    }
+
+    private static long align8(long value) {
+        return (value + 7) & ~7L;
+    }
+
+    /**
+     * Поток, отдающий не больше limit байт исходного.
+     */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Конвертер: {@code ColumnarSnapshot [csv] [snapshot]}.
+     */
+    public static void main(String[] args) throws IOException {
+        Path csv = Paths.get(args.length > 0 ? args[0] : "data/bank_data.csv");
+        Path snapshot = Paths.get(args.length > 1 ? args[1] : SNAPSHOT_FILE);
+
+        long start = System.nanoTime();
+        int rows = convertCsv(csv, snapshot);
+        System.out.printf("Снимок записан: %s (%d записей, %.1f мс)%n",
+                snapshot, rows, (System.nanoTime() - start) / 1e6);
+    }
+}
@@ -1,71 +1,403 @@
 package bankanalyzer.data;
 
+import bankanalyzer.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
+
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Журнал наблюдений в CSV, который только дописывается. Ключ записи — (банк, дата, срок):
+ * повторное наблюдение с тем же ключом дописывается новой строкой и при загрузке
+ * перекрывает предыдущую. Устаревшие строки убираются фоновым уплотнением.
+ *
+ * Уплотнение заодно пишет рядом {@link ColumnarSnapshot} (bank_data.bin для bank_data.csv).
+ * При загрузке снимок отображается в память, а из CSV дочитываются только строки,
+ * дописанные после него; снимок, не совпадающий с журналом, пропускается.
+ */
+@Slf4j
 public class DataStorage {
     private static final String DATA_FILE = "data/bank_data.csv";
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
-    private static final String CSV_HEADER = "bankName,depositRate,loanRate,investmentReturn,date,termDays";
 
-    public void saveData(List<BankData> data) {
+    // Количество строк между вызовами fsync
+    private static final int SYNC_BATCH_SIZE = 256;
+    // Уплотняем, когда устаревших строк больше MIN и больше доли от живых
+    private static final int COMPACTION_MIN_DEAD_ROWS = 64;
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
+    // Обновляем снимок, когда строк после него больше MIN и больше доли от живых
+    private static final int SNAPSHOT_MIN_TAIL_ROWS = 4096;
+    private static final double SNAPSHOT_TAIL_RATIO = 0.5;
+
+    private static final Metrics METRICS = Metrics.global();
+
+    private final Path dataFile;
+    private final Path snapshotFile;
+    private final BankDataCsvCodec codec = new BankDataCsvCodec();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "data-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Последнее наблюдение по каждому ключу; null, пока журнал не прочитан
+    private Map<RowKey, BankData> latest;
+    private int deadRows;
+    // Строки журнала, не вошедшие в снимок
+    private int tailRows;
+    private boolean legacyRows;
+    private boolean compactionScheduled;
+    // Строки, дописанные во время уплотнения; null, если уплотнение не идёт
+    private List<BankData> compactionTail;
+    // Индекс для аналитических запросов; строится при первом обращении
+    private RateHistory history;
+
+    public DataStorage() {
+        this(Paths.get(DATA_FILE));
+    }
+
+    public DataStorage(Path dataFile) {
+        this.dataFile = dataFile;
+        String name = dataFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        this.snapshotFile = dataFile.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + ".bin");
+    }
+
+    /**
+     * Дописывает в журнал только новые или изменившиеся наблюдения.
+     * Стоимость пропорциональна числу новых строк, а не размеру истории.
+     */
+    public synchronized void saveData(List<BankData> data) {
         try {
-            new File("data").mkdirs();
-            try (PrintWriter writer = new PrintWriter(new FileWriter(DATA_FILE))) {
-                writer.println(CSV_HEADER);
-
-                for (BankData item : data) {
-                    writer.printf("%s,%.2f,%.2f,%.2f,%s,%d%n",
-                            item.getBankName().replace(",", ";"),
-                            item.getDepositRate(),
-                            item.getLoanRate(),
-                            item.getInvestmentReturn(),
-                            item.getDate().format(DATE_FORMATTER),
-                            item.getTermDays());
+            ensureIndex();
+
+            // Индекс меняем только после записи: иначе при ошибке строки останутся в памяти,
+            // не попав на диск, и следующие сохранения пропустят их как уже известные
+            Map<RowKey, BankData> staged = new LinkedHashMap<>();
+            List<BankData> pending = new ArrayList<>();
+            int replaced = 0;
+            for (BankData item : data) {
+                RowKey key = RowKey.of(item);
+                BankData previous = staged.containsKey(key) ? staged.get(key) : latest.get(key);
+                if (previous != null && sameValues(previous, item)) {
+                    continue;
+                }
+                if (previous != null) {
+                    replaced++;
                 }
+                staged.put(key, item);
+                pending.add(item);
+            }
 
-                System.out.println("Данные успешно сохранены в CSV: " + DATA_FILE);
+            if (!pending.isEmpty()) {
+                long start = System.nanoTime();
+                appendRows(pending);
+                recordIo("append", start, pending.size());
+                latest.putAll(staged);
+                deadRows += replaced;
+                tailRows += pending.size();
+                if (compactionTail != null) {
+                    compactionTail.addAll(pending);
+                }
+                if (history != null) {
+                    history.addAll(pending);
+                }
             }
+            log.info("Данные сохранены в CSV: {} (новых записей: {})", dataFile, pending.size());
+
+            maybeScheduleCompaction();
         } catch (IOException e) {
-            System.err.println("Ошибка сохранения данных: " + e.getMessage());
+            log.error("Ошибка сохранения данных в {}: {}", dataFile, e.getMessage());
         }
     }
 
-    public List<BankData> loadData() {
-        List<BankData> data = new ArrayList<>();
+    public synchronized List<BankData> loadData() {
+        latest = new LinkedHashMap<>();
+        history = null;
+        deadRows = 0;
+        tailRows = 0;
+        legacyRows = false;
+        compactionTail = null;
+
+        if (!Files.exists(dataFile)) {
+            log.info("Файл данных не существует: {}", dataFile);
+            return new ArrayList<>();
+        }
+
+        long start = System.nanoTime();
+        long offset = loadSnapshot();
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            channel.position(offset);
+            BankDataCsvCodec.ReadStats stats = codec.read(Channels.newReader(channel, StandardCharsets.UTF_8), bankData -> {
+                if (latest.put(RowKey.of(bankData), bankData) != null) {
+                    deadRows++;
+                }
+            });
+            tailRows = (int) stats.getRowsRead();
 
+            if (stats.getRowsRejected() > 0) {
+                log.warn("Пропущено некорректных строк: {} (первая: строка {})",
+                        stats.getRowsRejected(), stats.getFirstRejectedLine());
+            }
+            if (stats.getRowsRecovered() > 0) {
+                // Строки в старом формате с десятичной запятой: перепишем файл в каноническом виде
+                log.info("Восстановлено строк старого формата: {}", stats.getRowsRecovered());
+                legacyRows = true;
+            }
+            METRICS.timer("storage_io_seconds", "Время операций с журналом", "op", "load").recordSince(start);
+            METRICS.counter("storage_rows_read_total", "Прочитано строк журнала").add(stats.getRowsRead());
+        } catch (IOException e) {
+            log.error("Ошибка загрузки данных из {}: {}", dataFile, e.getMessage());
+        }
+
+        maybeScheduleCompaction();
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * Заполняет индекс из снимка, если он построен по этому журналу.
+     * Возвращает смещение в CSV, с которого нужно дочитать строки.
+     */
+    private long loadSnapshot() {
+        if (!Files.exists(snapshotFile)) {
+            return 0;
+        }
         try {
-            File file = new File(DATA_FILE);
-            if (!file.exists()) {
-                System.out.println("Файл данных не существует: " + DATA_FILE);
-                return data;
+            ColumnarSnapshot snapshot = ColumnarSnapshot.open(snapshotFile);
+            long offset = snapshot.getSourceOffset();
+            if (offset < 0 || ColumnarSnapshot.sourceChecksum(dataFile, offset) != snapshot.getSourceChecksum()) {
+                log.info("Снимок {} не соответствует журналу, читаем CSV целиком", snapshotFile);
+                return 0;
+            }
+            for (int row = 0; row < snapshot.size(); row++) {
+                BankData item = snapshot.get(row);
+                latest.put(RowKey.of(item), item);
             }
+            METRICS.counter("storage_snapshot_rows_total", "Загружено строк из снимка").add(snapshot.size());
+            log.info("Загружено из снимка {}: {} записей", snapshotFile, snapshot.size());
+            return offset;
+        } catch (IOException e) {
+            log.warn("Снимок {} не прочитан, читаем CSV целиком: {}", snapshotFile, e.getMessage());
+            latest.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Текущее состояние журнала — последнее наблюдение по каждому ключу — без чтения файла.
+     */
+    public synchronized List<BankData> currentData() {
+        ensureIndex();
+        return new ArrayList<>(latest.values());
+    }
+
+    /**
+     * Индекс истории для запросов по рядам и агрегатам за период. Строится из журнала
+     * при первом вызове и дальше обновляется каждым saveData, без повторного чтения файла.
+     */
+    public synchronized RateHistory history() {
+        ensureIndex();
+        if (history == null) {
+            history = RateHistory.of(latest.values());
+        }
+        return history;
+    }
+
+    private void ensureIndex() {
+        if (latest == null) {
+            loadData();
+        }
+    }
+
+    private void appendRows(List<BankData> rows) throws IOException {
+        Path parent = dataFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        boolean newFile = !Files.exists(dataFile) || Files.size(dataFile) == 0;
 
-            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                String line = reader.readLine();
-
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length == 6) {
-                        BankData bankData = new BankData(
-                                parts[0],
-                                Double.parseDouble(parts[1]),
-                                Double.parseDouble(parts[2]),
-                                Double.parseDouble(parts[3]),
-                                LocalDate.parse(parts[4], DATE_FORMATTER),
-                                Integer.parseInt(parts[5])
-                        );
-                        data.add(bankData);
+        try (FileOutputStream out = new FileOutputStream(dataFile.toFile(), true);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (newFile) {
+                codec.writeHeader(writer);
+            }
+
+            int unsynced = 0;
+            for (BankData item : rows) {
+                codec.writeRow(writer, item);
+                if (++unsynced == SYNC_BATCH_SIZE) {
+                    writer.flush();
+                    out.getChannel().force(false);
+                    unsynced = 0;
+                }
+            }
+            writer.flush();
+            out.getChannel().force(false);
+        }
+    }
+
+    private void maybeScheduleCompaction() {
+        boolean manyDeadRows = deadRows >= COMPACTION_MIN_DEAD_ROWS
+                && deadRows >= latest.size() * COMPACTION_DEAD_RATIO;
+        boolean staleSnapshot = tailRows >= SNAPSHOT_MIN_TAIL_ROWS
+                && tailRows >= latest.size() * SNAPSHOT_TAIL_RATIO;
+        if (compactionScheduled || !(manyDeadRows || staleSnapshot || legacyRows)) {
+            return;
+        }
+        compactionScheduled = true;
+        compactor.submit(this::compact);
+    }
+
+    /**
+     * Переписывает журнал, оставляя по одной строке на ключ, и снимок с теми же строками.
+     * Новые файлы пишутся рядом и атомарно подменяют старые, так что прерванное уплотнение
+     * ничего не портит: снимок без своего журнала не пройдёт проверку контрольной суммы.
+     *
+     * Блокировка держится только на время копирования индекса и подмены файла: строки,
+     * сохранённые во время записи, дописываются в новый файл перед подменой.
+     */
+    void compact() {
+        List<BankData> rows;
+        List<BankData> tail;
+        int deadAtCopy;
+        synchronized (this) {
+            compactionScheduled = false;
+            if (latest == null || compactionTail != null || (deadRows == 0 && tailRows == 0 && !legacyRows)) {
+                return;
+            }
+            rows = new ArrayList<>(latest.values());
+            tail = new ArrayList<>();
+            compactionTail = tail;
+            deadAtCopy = deadRows;
+        }
+
+        Path tmp = dataFile.resolveSibling(dataFile.getFileName() + ".compact");
+        Path snapshotTmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".compact");
+        long start = System.nanoTime();
+        // Кодек не потокобезопасен, а основной занят saveData
+        BankDataCsvCodec compactionCodec = new BankDataCsvCodec();
+        try {
+            writeRows(tmp, compactionCodec, rows, false);
+            long snapshotOffset = Files.size(tmp);
+            ColumnarSnapshot.write(rows, snapshotTmp, snapshotOffset, ColumnarSnapshot.sourceChecksum(tmp, snapshotOffset));
+            synchronized (this) {
+                if (compactionTail != tail) {
+                    // Журнал перечитан во время уплотнения: результат устарел
+                    Files.deleteIfExists(tmp);
+                    Files.deleteIfExists(snapshotTmp);
+                    return;
+                }
+                try {
+                    if (!tail.isEmpty()) {
+                        writeRows(tmp, compactionCodec, tail, true);
                     }
+                    Files.move(tmp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    Files.move(snapshotTmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    // Замены, сохранённые после копии, остались в новом файле устаревшими строками
+                    deadRows -= deadAtCopy;
+                    tailRows = tail.size();
+                    legacyRows = false;
+                } finally {
+                    compactionTail = null;
                 }
             }
+            recordIo("compact", start, rows.size() + tail.size());
         } catch (IOException e) {
-            System.err.println("Ошибка загрузки данных: " + e.getMessage());
+            log.warn("Ошибка уплотнения данных: {}", e.getMessage());
+            synchronized (this) {
+                if (compactionTail == tail) {
+                    compactionTail = null;
+                }
+            }
+            try {
+                Files.deleteIfExists(tmp);
+                Files.deleteIfExists(snapshotTmp);
+            } catch (IOException ignored) {
+                // временный файл будет перезаписан при следующем уплотнении
+            }
+        }
+    }
+
+    private static void writeRows(Path file, BankDataCsvCodec codec, List<BankData> rows, boolean append)
+            throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file.toFile(), append);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            if (!append) {
+                codec.writeHeader(writer);
+            }
+            for (BankData item : rows) {
+                codec.writeRow(writer, item);
+            }
+            writer.flush();
+            out.getChannel().force(false);
+        }
+    }
+
+    synchronized int getDeadRows() {
+        return deadRows;
+    }
+
+    synchronized int getTailRows() {
+        return tailRows;
+    }
+
+    private static void recordIo(String op, long startNanos, long rowsWritten) {
+        METRICS.timer("storage_io_seconds", "Время операций с журналом", "op", op).recordSince(startNanos);
+        METRICS.counter("storage_rows_written_total", "Записано строк журнала", "op", op).add(rowsWritten);
+    }
+
+    // Сравниваем с точностью, с которой значения хранятся в файле
+    private static boolean sameValues(BankData a, BankData b) {
+        return Math.round(a.getDepositRate() * 100) == Math.round(b.getDepositRate() * 100)
+                && Math.round(a.getLoanRate() * 100) == Math.round(b.getLoanRate() * 100)
+                && Math.round(a.getInvestmentReturn() * 100) == Math.round(b.getInvestmentReturn() * 100);
+    }
+
+    static final class RowKey {
+        private final String bankName;
+        private final LocalDate date;
+        private final int termDays;
+        private final int hash;
+
+        private RowKey(String bankName, LocalDate date, int termDays) {
+            this.bankName = bankName;
+            this.date = date;
+            this.termDays = termDays;
+            // Названия банков и даты идут почти подряд, поэтому перемешиваем их
+            // мультипликативно: Objects.hash даёт много коллизий на длинной истории
+            this.hash = bankName.hashCode() * 0x9E3779B1
+                    + (int) date.toEpochDay() * 0x85EBCA6B
+                    + termDays;
         }
 
-        return data;
+        static RowKey of(BankData data) {
+            return new RowKey(data.getBankName(), data.getDate(), data.getTermDays());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RowKey)) return false;
+            RowKey other = (RowKey) o;
+            return termDays == other.termDays
+                    && bankName.equals(other.bankName)
+                    && date.equals(other.date);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,452 @@
+package bankanalyzer.data;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Индекс истории ставок для аналитических запросов: ряд каждого банка хранится
+ * колонками, отсортированными по (дата, срок), а поверх рядов поддерживаются агрегаты
+ * min/max/avg по дням, неделям и месяцам — по каждому банку и по всем банкам сразу.
+ * Запрос за диапазон дат — двоичный поиск границ и копирование результата, O(log n + k).
+ * Дневные агрегаты отдельного банка не хранятся: в дне одна-две строки ряда, и корзина
+ * собирается из них при запросе с той же оценкой, без лишнего объекта на каждое наблюдение.
+ *
+ * Наблюдения добавляются по одному: новое дописывается в агрегаты за O(log n), а замена
+ * наблюдения с тем же ключом (банк, дата, срок) пересчитывает только затронутые корзины.
+ * Корзины, частично попавшие в диапазон, возвращаются целиком.
+ */
+public class RateHistory {
+
+    public enum Measure {
+        DEPOSIT_RATE, LOAN_RATE, INVESTMENT_RETURN,
+        // Разница между ставками по кредиту и по вкладу
+        SPREAD
+    }
+
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        /**
+         * Первый день корзины, содержащей epochDay. Недели начинаются с понедельника.
+         */
+        int bucketStart(int epochDay) {
+            switch (this) {
+                case DAY:
+                    return epochDay;
+                case WEEK:
+                    // 1970-01-01 — четверг
+                    return epochDay - Math.floorMod(epochDay + 3, 7);
+                default:
+                    return (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+            }
+        }
+
+        // Первый день следующей корзины
+        int nextBucket(int bucketStart) {
+            switch (this) {
+                case DAY:
+                    return bucketStart + 1;
+                case WEEK:
+                    return bucketStart + 7;
+                default:
+                    return (int) LocalDate.ofEpochDay(bucketStart).plusMonths(1).toEpochDay();
+            }
+        }
+    }
+
+    private static final int MEASURES = Measure.values().length;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, Series> banks = new HashMap<>();
+    private final Map<Granularity, NavigableMap<Integer, Aggregate>> overall = rollupMaps();
+    // Последняя тронутая корзина каждой гранулярности: при дописывании по порядку дат поиск в дереве не нужен
+    private final Aggregate[] recentOverall = new Aggregate[Granularity.values().length];
+
+    /**
+     * Индекс по набору наблюдений; при повторе ключа побеждает последнее.
+     */
+    public static RateHistory of(Collection<BankData> data) {
+        // Дописывание по порядку дат — самый дешёвый путь, поэтому сначала сортируем
+        List<BankData> sorted = new ArrayList<>(data);
+        sorted.sort(Comparator.comparing(BankData::getDate).thenComparingInt(BankData::getTermDays));
+        RateHistory history = new RateHistory();
+        history.addAll(sorted);
+        return history;
+    }
+
+    public synchronized void addAll(Collection<BankData> data) {
+        for (BankData item : data) {
+            add(item);
+        }
+    }
+
+    /**
+     * Добавляет наблюдение или заменяет прежнее с тем же банком, датой и сроком.
+     */
+    public synchronized void add(BankData item) {
+        String bank = item.getBankName();
+        Series series = banks.computeIfAbsent(bank, Series::new);
+        int day = (int) item.getDate().toEpochDay();
+        long key = key(day, item.getTermDays());
+        double[] values = values(item.getDepositRate(), item.getLoanRate(), item.getInvestmentReturn());
+
+        int pos = series.find(key);
+        if (pos >= 0) {
+            // Минимум и максимум нельзя «отменить», поэтому корзины с этим днём пересчитываются
+            series.set(pos, item);
+            for (Granularity granularity : Granularity.values()) {
+                recompute(series, granularity, granularity.bucketStart(day));
+            }
+            return;
+        }
+
+        series.insert(-pos - 1, key, item);
+        for (Granularity granularity : Granularity.values()) {
+            int start = granularity.bucketStart(day);
+            NavigableMap<Integer, Aggregate> own = series.rollups.get(granularity);
+            if (own != null) {
+                bucket(own, series.recent, granularity, start).add(bank, values);
+            }
+            bucket(overall.get(granularity), recentOverall, granularity, start).add(bank, values);
+        }
+    }
+
+    private static Aggregate bucket(NavigableMap<Integer, Aggregate> rollups, Aggregate[] recent,
+                                    Granularity granularity, int start) {
+        Aggregate aggregate = recent[granularity.ordinal()];
+        if (aggregate == null || aggregate.start != start) {
+            aggregate = rollups.computeIfAbsent(start, Aggregate::new);
+            recent[granularity.ordinal()] = aggregate;
+        }
+        return aggregate;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (Series series : banks.values()) {
+            size += series.size;
+        }
+        return size;
+    }
+
+    public synchronized List<String> bankNames() {
+        List<String> names = new ArrayList<>(banks.keySet());
+        names.sort(null);
+        return names;
+    }
+
+    /**
+     * Наблюдения банка с from по to включительно, по возрастанию даты и срока.
+     */
+    public synchronized RateTable series(String bankName, LocalDate from, LocalDate to) {
+        Series series = banks.get(bankName);
+        if (series == null) {
+            return new RateTable();
+        }
+        int begin = series.lowerBound(key((int) from.toEpochDay(), 0));
+        int end = series.lowerBound(key((int) to.toEpochDay() + 1, 0));
+        RateTable result = new RateTable(Math.max(0, end - begin));
+        for (int i = begin; i < end; i++) {
+            long key = series.keys[i];
+            result.add(bankName, series.deposit[i], series.loan[i], series.ret[i], (int) (key >> 32), (int) key);
+        }
+        return result;
+    }
+
+    /**
+     * Агрегаты банка по корзинам, пересекающим [from, to].
+     */
+    public synchronized List<Bucket> rollup(String bankName, Granularity granularity, LocalDate from, LocalDate to) {
+        Series series = banks.get(bankName);
+        if (series == null) {
+            return new ArrayList<>();
+        }
+        NavigableMap<Integer, Aggregate> rollups = series.rollups.get(granularity);
+        if (rollups != null) {
+            return buckets(rollups, granularity, from, to);
+        }
+        List<Bucket> result = new ArrayList<>();
+        int day = granularity.bucketStart((int) from.toEpochDay());
+        int last = (int) to.toEpochDay();
+        int i = series.lowerBound(key(day, 0));
+        while (i < series.size && (int) (series.keys[i] >> 32) <= last) {
+            int start = granularity.bucketStart((int) (series.keys[i] >> 32));
+            int end = series.lowerBound(key(granularity.nextBucket(start), 0));
+            result.add(aggregate(series, start, i, end).toBucket(granularity));
+            i = end;
+        }
+        return result;
+    }
+
+    /**
+     * Агрегаты по всем банкам: например, лучшая ставка по вкладу за каждую неделю —
+     * {@link Bucket#getMax} и {@link Bucket#getMaxBank} для DEPOSIT_RATE.
+     */
+    public synchronized List<Bucket> rollup(Granularity granularity, LocalDate from, LocalDate to) {
+        return buckets(overall.get(granularity), granularity, from, to);
+    }
+
+    private static List<Bucket> buckets(NavigableMap<Integer, Aggregate> rollups, Granularity granularity,
+                                        LocalDate from, LocalDate to) {
+        int first = granularity.bucketStart((int) from.toEpochDay());
+        int last = (int) to.toEpochDay();
+        List<Bucket> result = new ArrayList<>();
+        if (first > last) {
+            return result;
+        }
+        for (Aggregate aggregate : rollups.subMap(first, true, last, true).values()) {
+            result.add(aggregate.toBucket(granularity));
+        }
+        return result;
+    }
+
+    private void recompute(Series series, Granularity granularity, int start) {
+        NavigableMap<Integer, Aggregate> own = series.rollups.get(granularity);
+        if (own != null) {
+            own.put(start, aggregate(series, granularity, start));
+            series.recent[granularity.ordinal()] = null;
+        }
+
+        // Общая корзина собирается из корзин банков: их не больше числа банков
+        Aggregate total = new Aggregate(start);
+        for (Series other : banks.values()) {
+            NavigableMap<Integer, Aggregate> rollups = other.rollups.get(granularity);
+            Aggregate part = rollups != null ? rollups.get(start) : aggregate(other, granularity, start);
+            if (part != null) {
+                total.merge(part);
+            }
+        }
+        overall.get(granularity).put(start, total);
+        recentOverall[granularity.ordinal()] = null;
+    }
+
+    private static Aggregate aggregate(Series series, Granularity granularity, int start) {
+        return aggregate(series, start, series.lowerBound(key(start, 0)),
+                series.lowerBound(key(granularity.nextBucket(start), 0)));
+    }
+
+    private static Aggregate aggregate(Series series, int start, int from, int to) {
+        Aggregate aggregate = new Aggregate(start);
+        for (int i = from; i < to; i++) {
+            aggregate.add(series.bank, values(series.deposit[i], series.loan[i], series.ret[i]));
+        }
+        return aggregate;
+    }
+
+    // Ключ строки ряда: дата в старших 32 битах, срок в младших
+    private static long key(int epochDay, int termDays) {
+        return ((long) epochDay << 32) | (termDays & 0xFFFFFFFFL);
+    }
+
+    private static double[] values(double depositRate, double loanRate, double investmentReturn) {
+        double[] values = new double[MEASURES];
+        values[Measure.DEPOSIT_RATE.ordinal()] = depositRate;
+        values[Measure.LOAN_RATE.ordinal()] = loanRate;
+        values[Measure.INVESTMENT_RETURN.ordinal()] = investmentReturn;
+        values[Measure.SPREAD.ordinal()] = loanRate - depositRate;
+        return values;
+    }
+
+    private static Map<Granularity, NavigableMap<Integer, Aggregate>> rollupMaps() {
+        Map<Granularity, NavigableMap<Integer, Aggregate>> maps = new EnumMap<>(Granularity.class);
+        for (Granularity granularity : Granularity.values()) {
+            maps.put(granularity, new TreeMap<>());
+        }
+        return maps;
+    }
+
+    /**
+     * Ряд одного банка: колонки, отсортированные по ключу (дата, срок).
+     * Срок неотрицателен, поэтому ключ (день, 0) не больше ключа любой строки этого дня.
+     */
+    private static final class Series {
+        private final String bank;
+        // Только недели и месяцы; дни собираются из строк ряда
+        private final Map<Granularity, NavigableMap<Integer, Aggregate>> rollups = rollupMaps();
+        private final Aggregate[] recent = new Aggregate[Granularity.values().length];
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private double[] deposit = new double[INITIAL_CAPACITY];
+        private double[] loan = new double[INITIAL_CAPACITY];
+        private double[] ret = new double[INITIAL_CAPACITY];
+        private int size;
+
+        Series(String bank) {
+            this.bank = bank;
+            rollups.remove(Granularity.DAY);
+        }
+
+        int find(long key) {
+            // Обычно новое наблюдение позже всех остальных
+            if (size == 0 || keys[size - 1] < key) {
+                return -(size + 1);
+            }
+            return Arrays.binarySearch(keys, 0, size, key);
+        }
+
+        // Первая позиция с ключом >= key
+        int lowerBound(long key) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void set(int pos, BankData item) {
+            deposit[pos] = item.getDepositRate();
+            loan[pos] = item.getLoanRate();
+            ret[pos] = item.getInvestmentReturn();
+        }
+
+        void insert(int pos, long key, BankData item) {
+            if (size == keys.length) {
+                int capacity = keys.length * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                deposit = Arrays.copyOf(deposit, capacity);
+                loan = Arrays.copyOf(loan, capacity);
+                ret = Arrays.copyOf(ret, capacity);
+            }
+            int tail = size - pos;
+            if (tail > 0) {
+                System.arraycopy(keys, pos, keys, pos + 1, tail);
+                System.arraycopy(deposit, pos, deposit, pos + 1, tail);
+                System.arraycopy(loan, pos, loan, pos + 1, tail);
+                System.arraycopy(ret, pos, ret, pos + 1, tail);
+            }
+            keys[pos] = key;
+            set(pos, item);
+            size++;
+        }
+    }
+
+    private static final class Aggregate {
+        private final int start;
+        private int count;
+        private final double[] min = new double[MEASURES];
+        private final double[] max = new double[MEASURES];
+        private final double[] sum = new double[MEASURES];
+        private final String[] minBank = new String[MEASURES];
+        private final String[] maxBank = new String[MEASURES];
+
+        Aggregate(int start) {
+            this.start = start;
+        }
+
+        void add(String bank, double[] values) {
+            for (int m = 0; m < MEASURES; m++) {
+                double value = values[m];
+                if (count == 0 || value < min[m]) {
+                    min[m] = value;
+                    minBank[m] = bank;
+                }
+                if (count == 0 || value > max[m]) {
+                    max[m] = value;
+                    maxBank[m] = bank;
+                }
+                sum[m] += value;
+            }
+            count++;
+        }
+
+        void merge(Aggregate other) {
+            if (other.count == 0) {
+                return;
+            }
+            for (int m = 0; m < MEASURES; m++) {
+                if (count == 0 || other.min[m] < min[m]) {
+                    min[m] = other.min[m];
+                    minBank[m] = other.minBank[m];
+                }
+                if (count == 0 || other.max[m] > max[m]) {
+                    max[m] = other.max[m];
+                    maxBank[m] = other.maxBank[m];
+                }
+                sum[m] += other.sum[m];
+            }
+            count += other.count;
+        }
+
+        Bucket toBucket(Granularity granularity) {
+            return new Bucket(granularity, LocalDate.ofEpochDay(start), count,
+                    min.clone(), max.clone(), sum.clone(), minBank.clone(), maxBank.clone());
+        }
+    }
+
+    /**
+     * Неизменяемый агрегат одной корзины на момент запроса.
+     */
+    public static final class Bucket {
+        private final Granularity granularity;
+        private final LocalDate start;
+        private final int count;
+        private final double[] min;
+        private final double[] max;
+        private final double[] sum;
+        private final String[] minBank;
+        private final String[] maxBank;
+
+        private Bucket(Granularity granularity, LocalDate start, int count, double[] min, double[] max,
+                       double[] sum, String[] minBank, String[] maxBank) {
+            this.granularity = granularity;
+            this.start = start;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.sum = sum;
+            this.minBank = minBank;
+            this.maxBank = maxBank;
+        }
+
+        public Granularity getGranularity() {
+            return granularity;
+        }
+
+        public LocalDate getStart() {
+            return start;
+        }
+
+        // Последний день корзины
+        public LocalDate getEnd() {
+            return LocalDate.ofEpochDay(granularity.nextBucket((int) start.toEpochDay()) - 1);
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public double getMin(Measure measure) {
+            return min[measure.ordinal()];
+        }
+
+        public double getMax(Measure measure) {
+            return max[measure.ordinal()];
+        }
+
+        public double getAverage(Measure measure) {
+            return count == 0 ? Double.NaN : sum[measure.ordinal()] / count;
+        }
+
+        public String getMinBank(Measure measure) {
+            return minBank[measure.ordinal()];
+        }
+
+        public String getMaxBank(Measure measure) {
+            return maxBank[measure.ordinal()];
+        }
+    }
+}
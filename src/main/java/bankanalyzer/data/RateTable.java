@@ -0,0 +1,382 @@
+package bankanalyzer.data;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Колоночная таблица наблюдений: параллельные примитивные массивы вместо
+ * списка объектов {@link BankData} и словарь названий банков.
+ * Таблица только дополняется; индексы по банку и дате строятся лениво.
+ */
+public class RateTable {
+    public enum Column { DEPOSIT_RATE, LOAN_RATE, INVESTMENT_RETURN }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final List<String> bankNames;
+    private final Map<String, Integer> bankIdsByName;
+
+    private int size;
+    private int[] bankIds;
+    private int[] epochDays;
+    private int[] termDays;
+    private double[] depositRates;
+    private double[] loanRates;
+    private double[] investmentReturns;
+
+    // Ленивые индексы: номера строк по банку и по дате. Строятся из потоков API,
+    // поэтому публикуются через volatile только полностью построенными
+    private volatile int[][] rowsByBank;
+    private volatile Map<Integer, int[]> rowsByDay;
+
+    public RateTable() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public RateTable(int capacity) {
+        int initial = Math.max(capacity, 1);
+        this.bankNames = new ArrayList<>();
+        this.bankIdsByName = new HashMap<>();
+        this.bankIds = new int[initial];
+        this.epochDays = new int[initial];
+        this.termDays = new int[initial];
+        this.depositRates = new double[initial];
+        this.loanRates = new double[initial];
+        this.investmentReturns = new double[initial];
+    }
+
+    RateTable(String[] names, int[] bankIds, int[] epochDays, int[] termDays,
+              double[] depositRates, double[] loanRates, double[] investmentReturns) {
+        this.bankNames = new ArrayList<>(Arrays.asList(names));
+        this.bankIdsByName = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            bankIdsByName.put(names[i], i);
+        }
+        this.size = bankIds.length;
+        this.bankIds = bankIds;
+        this.epochDays = epochDays;
+        this.termDays = termDays;
+        this.depositRates = depositRates;
+        this.loanRates = loanRates;
+        this.investmentReturns = investmentReturns;
+    }
+
+    public static RateTable of(List<BankData> data) {
+        RateTable table = new RateTable(data.size());
+        for (BankData item : data) {
+            table.add(item);
+        }
+        return table;
+    }
+
+    public void add(BankData item) {
+        add(item.getBankName(), item.getDepositRate(), item.getLoanRate(), item.getInvestmentReturn(),
+                (int) item.getDate().toEpochDay(), item.getTermDays());
+    }
+
+    public void add(String bankName, double depositRate, double loanRate, double investmentReturn,
+                    int epochDay, int term) {
+        if (size == bankIds.length) {
+            grow();
+        }
+        bankIds[size] = bankId(bankName);
+        epochDays[size] = epochDay;
+        termDays[size] = term;
+        depositRates[size] = depositRate;
+        loanRates[size] = loanRate;
+        investmentReturns[size] = investmentReturn;
+        size++;
+
+        rowsByBank = null;
+        rowsByDay = null;
+    }
+
+    public void addAll(RateTable other) {
+        for (int i = 0; i < other.size; i++) {
+            add(other.bankName(i), other.depositRates[i], other.loanRates[i], other.investmentReturns[i],
+                    other.epochDays[i], other.termDays[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int bankCount() {
+        return bankNames.size();
+    }
+
+    public String bankNameById(int bankId) {
+        return bankNames.get(bankId);
+    }
+
+    /**
+     * Номер банка в словаре таблицы или -1, если такого банка нет.
+     */
+    public int findBankId(String bankName) {
+        Integer id = bankIdsByName.get(bankName);
+        return id != null ? id : -1;
+    }
+
+    public String bankName(int row) {
+        checkRow(row);
+        return bankNames.get(bankIds[row]);
+    }
+
+    public int bankId(int row) {
+        checkRow(row);
+        return bankIds[row];
+    }
+
+    public int epochDay(int row) {
+        checkRow(row);
+        return epochDays[row];
+    }
+
+    public LocalDate date(int row) {
+        return LocalDate.ofEpochDay(epochDay(row));
+    }
+
+    public int termDays(int row) {
+        checkRow(row);
+        return termDays[row];
+    }
+
+    public double depositRate(int row) {
+        checkRow(row);
+        return depositRates[row];
+    }
+
+    public double loanRate(int row) {
+        checkRow(row);
+        return loanRates[row];
+    }
+
+    public double investmentReturn(int row) {
+        checkRow(row);
+        return investmentReturns[row];
+    }
+
+    public double value(Column column, int row) {
+        checkRow(row);
+        return columnArray(column)[row];
+    }
+
+    /**
+     * Копирует строки [from, to) колонки в dest начиная с destPos одним System.arraycopy.
+     */
+    public void copyColumn(Column column, int from, int to, double[] dest, int destPos) {
+        checkRange(from, to);
+        System.arraycopy(columnArray(column), from, dest, destPos, to - from);
+    }
+
+    public void copyTermDays(int from, int to, int[] dest, int destPos) {
+        checkRange(from, to);
+        System.arraycopy(termDays, from, dest, destPos, to - from);
+    }
+
+    public BankData get(int row) {
+        checkRow(row);
+        return new BankData(bankName(row), depositRates[row], loanRates[row], investmentReturns[row],
+                LocalDate.ofEpochDay(epochDays[row]), termDays[row]);
+    }
+
+    public List<BankData> toList() {
+        List<BankData> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Номера строк банка в порядке добавления; пустой массив, если банка нет.
+     */
+    public int[] rowsForBank(String bankName) {
+        int id = findBankId(bankName);
+        if (id < 0) {
+            return new int[0];
+        }
+        return bankIndex()[id].clone();
+    }
+
+    public int[] rowsForDate(LocalDate date) {
+        int[] rows = dayIndex().get((int) date.toEpochDay());
+        return rows != null ? rows.clone() : new int[0];
+    }
+
+    public RateTable forBank(String bankName) {
+        return select(rowsForBank(bankName));
+    }
+
+    public RateTable forDate(LocalDate date) {
+        return select(rowsForDate(date));
+    }
+
+    /**
+     * Новая таблица из указанных строк; словарь банков сохраняется целиком,
+     * поэтому идентификаторы банков совпадают с исходной таблицей.
+     */
+    public RateTable select(int[] rows) {
+        int n = rows.length;
+        int[] ids = new int[n];
+        int[] days = new int[n];
+        int[] terms = new int[n];
+        double[] deposits = new double[n];
+        double[] loans = new double[n];
+        double[] returns = new double[n];
+        for (int i = 0; i < n; i++) {
+            int row = rows[i];
+            checkRow(row);
+            ids[i] = bankIds[row];
+            days[i] = epochDays[row];
+            terms[i] = termDays[row];
+            deposits[i] = depositRates[row];
+            loans[i] = loanRates[row];
+            returns[i] = investmentReturns[row];
+        }
+        return new RateTable(bankNames.toArray(new String[0]), ids, days, terms, deposits, loans, returns);
+    }
+
+    /**
+     * Номера строк с наибольшими значениями колонки, по убыванию.
+     */
+    public int[] topRows(Column column, int limit) {
+        double[] values = columnArray(column);
+        return TopRows.select(size, row -> values[row], limit, false);
+    }
+
+    /**
+     * Последняя по дате строка каждого банка (при равных датах — добавленная позже)
+     * в порядке номеров банков.
+     */
+    public int[] latestRowPerBank() {
+        int[] latest = new int[bankNames.size()];
+        Arrays.fill(latest, -1);
+        for (int row = 0; row < size; row++) {
+            int bank = bankIds[row];
+            if (latest[bank] < 0 || epochDays[row] >= epochDays[latest[bank]]) {
+                latest[bank] = row;
+            }
+        }
+        int count = 0;
+        for (int row : latest) {
+            if (row >= 0) {
+                latest[count++] = row;
+            }
+        }
+        return Arrays.copyOf(latest, count);
+    }
+
+    /**
+     * Последняя по дате строка каждого продукта — пары (банк, срок), по возрастанию номеров строк.
+     */
+    public int[] latestRowPerProduct() {
+        Map<Long, Integer> latest = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            long key = ((long) bankIds[row] << 32) | (termDays[row] & 0xFFFFFFFFL);
+            Integer previous = latest.get(key);
+            if (previous == null || epochDays[row] >= epochDays[previous]) {
+                latest.put(key, row);
+            }
+        }
+        int[] rows = new int[latest.size()];
+        int count = 0;
+        for (int row : latest.values()) {
+            rows[count++] = row;
+        }
+        Arrays.sort(rows);
+        return rows;
+    }
+
+    private int bankId(String bankName) {
+        Integer id = bankIdsByName.get(bankName);
+        if (id == null) {
+            id = bankNames.size();
+            bankNames.add(bankName);
+            bankIdsByName.put(bankName, id);
+        }
+        return id;
+    }
+
+    private int[][] bankIndex() {
+        int[][] rowsByBank = this.rowsByBank;
+        if (rowsByBank == null) {
+            int[] counts = new int[bankNames.size()];
+            for (int i = 0; i < size; i++) {
+                counts[bankIds[i]]++;
+            }
+            int[][] index = new int[counts.length][];
+            for (int b = 0; b < counts.length; b++) {
+                index[b] = new int[counts[b]];
+                counts[b] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                int b = bankIds[i];
+                index[b][counts[b]++] = i;
+            }
+            rowsByBank = index;
+            this.rowsByBank = index;
+        }
+        return rowsByBank;
+    }
+
+    private Map<Integer, int[]> dayIndex() {
+        Map<Integer, int[]> rowsByDay = this.rowsByDay;
+        if (rowsByDay == null) {
+            Map<Integer, int[]> counts = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                counts.computeIfAbsent(epochDays[i], d -> new int[1])[0]++;
+            }
+            Map<Integer, int[]> index = new HashMap<>(counts.size() * 2);
+            for (Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+                index.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
+            }
+            for (int i = 0; i < size; i++) {
+                int[] cursor = counts.get(epochDays[i]);
+                index.get(epochDays[i])[cursor[0]++] = i;
+            }
+            rowsByDay = index;
+            this.rowsByDay = index;
+        }
+        return rowsByDay;
+    }
+
+    private double[] columnArray(Column column) {
+        switch (column) {
+            case DEPOSIT_RATE:
+                return depositRates;
+            case LOAN_RATE:
+                return loanRates;
+            default:
+                return investmentReturns;
+        }
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, bankIds.length * 2);
+        bankIds = Arrays.copyOf(bankIds, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        termDays = Arrays.copyOf(termDays, capacity);
+        depositRates = Arrays.copyOf(depositRates, capacity);
+        loanRates = Arrays.copyOf(loanRates, capacity);
+        investmentReturns = Arrays.copyOf(investmentReturns, capacity);
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Строка " + row + " вне таблицы размера " + size);
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > size || from > to) {
+            throw new IndexOutOfBoundsException("Диапазон [" + from + ", " + to + ") вне таблицы размера " + size);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package bankanalyzer.data;
+
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Выбор k строк с наибольшей оценкой без сортировки всех кандидатов: ограниченная
+ * min-куча на k элементов, O(N log k) времени и O(k) памяти. При равных оценках
+ * выше стоит строка с меньшим номером, как при устойчивой сортировке.
+ *
+ * Большие наборы можно разбирать параллельно: каждая часть строит свою кучу,
+ * затем кучи сливаются в одну. Результат совпадает с последовательным.
+ */
+public final class TopRows {
+    // Меньше этого параллельный разбор не окупает накладные расходы
+    public static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MIN_CHUNK = 1 << 14;
+
+    private TopRows() {
+    }
+
+    /**
+     * Номера k лучших строк из rows по убыванию оценки.
+     */
+    public static int[] select(int[] rows, IntToDoubleFunction score, int k, boolean parallel) {
+        int n = rows.length;
+        if (k <= 0 || n == 0) {
+            return new int[0];
+        }
+        if (!parallel || n < PARALLEL_THRESHOLD) {
+            Heap heap = new Heap(Math.min(k, n), score);
+            for (int row : rows) {
+                heap.offer(row);
+            }
+            return heap.toSortedArray();
+        }
+
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, n / MIN_CHUNK));
+        int chunkSize = (n + chunks - 1) / chunks;
+        Heap merged = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    Heap heap = new Heap(Math.min(k, n), score);
+                    for (int i = c * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+                        heap.offer(rows[i]);
+                    }
+                    return heap;
+                })
+                .reduce(Heap::merge)
+                .orElseThrow();
+        return merged.toSortedArray();
+    }
+
+    /**
+     * Номера k лучших строк таблицы 0..size-1 по убыванию оценки.
+     */
+    public static int[] select(int size, IntToDoubleFunction score, int k, boolean parallel) {
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = i;
+        }
+        return select(rows, score, k, parallel);
+    }
+
+    /**
+     * Min-куча по оценке: в корне худшая из отобранных строк.
+     */
+    private static final class Heap {
+        private final int[] rows;
+        private final double[] scores;
+        private final IntToDoubleFunction score;
+        private int size;
+
+        Heap(int capacity, IntToDoubleFunction score) {
+            this.rows = new int[capacity];
+            this.scores = new double[capacity];
+            this.score = score;
+        }
+
+        void offer(int row) {
+            offer(row, score.applyAsDouble(row));
+        }
+
+        void offer(int row, double value) {
+            if (size < rows.length) {
+                rows[size] = row;
+                scores[size] = value;
+                siftUp(size++);
+            } else if (worse(0, row, value)) {
+                rows[0] = row;
+                scores[0] = value;
+                siftDown(0);
+            }
+        }
+
+        Heap merge(Heap other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.rows[i], other.scores[i]);
+            }
+            return this;
+        }
+
+        int[] toSortedArray() {
+            int[] result = new int[size];
+            // Извлекаем минимум, заполняя результат с конца
+            for (int i = size - 1; i >= 0; i--) {
+                result[i] = rows[0];
+                size--;
+                rows[0] = rows[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        // Элемент кучи i хуже кандидата (row, value)
+        private boolean worse(int i, int row, double value) {
+            return scores[i] < value || (scores[i] == value && rows[i] > row);
+        }
+
+        private boolean less(int a, int b) {
+            return worse(a, rows[b], scores[b]);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!less(i, parent)) {
+                    break;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                if (left >= size) {
+                    break;
+                }
+                int smallest = left + 1 < size && less(left + 1, left) ? left + 1 : left;
+                if (!less(smallest, i)) {
+                    break;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int row = rows[a];
+            rows[a] = rows[b];
+            rows[b] = row;
+            double value = scores[a];
+            scores[a] = scores[b];
+            scores[b] = value;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package bankanalyzer.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Монотонный счётчик. Либо считает сам, либо читает готовое значение
+ * у владельца (например, счётчики попаданий кэша).
+ */
+public final class Counter extends Metric {
+    private final LongAdder value = new LongAdder();
+    private final LongSupplier source;
+
+    Counter(String name, String help, String[] labels, LongSupplier source) {
+        super(name, help, labels);
+        this.source = source;
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Счётчик не может уменьшаться");
+        }
+        value.add(amount);
+    }
+
+    public long get() {
+        return source != null ? source.getAsLong() : value.sum();
+    }
+
+    @Override
+    String type() {
+        return "counter";
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeSample(out, "", null, null, get());
+    }
+
+    @Override
+    Map<String, Double> attributes() {
+        return Collections.singletonMap("Count", (double) get());
+    }
+}
@@ -0,0 +1,42 @@
+package bankanalyzer.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Текущее значение: последнее записанное через {@link #set} или читаемое у владельца.
+ */
+public final class Gauge extends Metric {
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(Double.NaN));
+    private final DoubleSupplier source;
+
+    Gauge(String name, String help, String[] labels, DoubleSupplier source) {
+        super(name, help, labels);
+        this.source = source;
+    }
+
+    public void set(double value) {
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    public double get() {
+        return source != null ? source.getAsDouble() : Double.longBitsToDouble(bits.get());
+    }
+
+    @Override
+    String type() {
+        return "gauge";
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        writeSample(out, "", null, null, get());
+    }
+
+    @Override
+    Map<String, Double> attributes() {
+        return Collections.singletonMap("Value", get());
+    }
+}
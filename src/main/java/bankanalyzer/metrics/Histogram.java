@@ -0,0 +1,156 @@
+package bankanalyzer.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Гистограмма неотрицательных целых значений с логарифмически-линейными корзинами,
+ * как в HdrHistogram: до 128 каждое значение точно, выше — 64 корзины на каждую
+ * степень двойки, то есть относительная погрешность квантиля не больше 1/64.
+ * Запись — один атомарный инкремент без блокировок; память постоянна (~30 КБ).
+ *
+ * Наружу отдаётся как summary: квантили, сумма и количество в единицах экспорта
+ * (значение делится на divisor, например наносекунды -> секунды).
+ */
+public class Histogram extends Metric {
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    // Старший бит положительного long — 62-й, сдвиг для него 56
+    private static final int BUCKET_COUNT = SUB_COUNT + (63 - SUB_BITS) * HALF_COUNT;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    private final double divisor;
+
+    Histogram(String name, String help, String[] labels, double divisor) {
+        super(name, help, labels);
+        this.divisor = divisor;
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        buckets.incrementAndGet(index(v));
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    /**
+     * Согласованная копия распределения для расчёта квантилей.
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) ((value >>> shift) - HALF_COUNT);
+    }
+
+    // Наибольшее значение, попадающее в корзину
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int k = index - SUB_COUNT;
+        int shift = k / HALF_COUNT + 1;
+        long mantissa = HALF_COUNT + k % HALF_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Значение квантиля q (0..1) в исходных единицах; 0 для пустой гистограммы.
+         */
+        public long valueAt(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        public double scaledValueAt(double q) {
+            return valueAt(q) / divisor;
+        }
+
+        public double getScaledSum() {
+            return sum / divisor;
+        }
+
+        public double getScaledMax() {
+            return max / divisor;
+        }
+
+        public double getScaledMean() {
+            return count == 0 ? 0.0 : (double) sum / count / divisor;
+        }
+    }
+
+    @Override
+    String type() {
+        return "summary";
+    }
+
+    @Override
+    void writePrometheus(StringBuilder out) {
+        Snapshot snapshot = snapshot();
+        for (double q : QUANTILES) {
+            writeSample(out, "", "quantile", Double.toString(q), snapshot.scaledValueAt(q));
+        }
+        writeSample(out, "_sum", null, null, snapshot.getScaledSum());
+        writeSample(out, "_count", null, null, snapshot.getCount());
+    }
+
+    @Override
+    Map<String, Double> attributes() {
+        Snapshot snapshot = snapshot();
+        Map<String, Double> values = new LinkedHashMap<>();
+        values.put("Count", (double) snapshot.getCount());
+        values.put("Sum", snapshot.getScaledSum());
+        values.put("Mean", snapshot.getScaledMean());
+        values.put("Max", snapshot.getScaledMax());
+        values.put("P50", snapshot.scaledValueAt(0.5));
+        values.put("P90", snapshot.scaledValueAt(0.9));
+        values.put("P99", snapshot.scaledValueAt(0.99));
+        values.put("P999", snapshot.scaledValueAt(0.999));
+        return values;
+    }
+}
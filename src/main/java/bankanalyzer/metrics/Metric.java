@@ -0,0 +1,90 @@
+package bankanalyzer.metrics;
+
+import java.util.Map;
+
+/**
+ * Одна серия метрики: имя и фиксированный набор меток.
+ */
+public abstract class Metric {
+    private final String name;
+    private final String help;
+    private final String[] labels;
+
+    Metric(String name, String help, String[] labels) {
+        this.name = name;
+        this.help = help;
+        this.labels = labels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Метки парами: имя, значение, имя, значение...
+     */
+    String[] labels() {
+        return labels;
+    }
+
+    // Тип в терминах Prometheus: counter, gauge или summary
+    abstract String type();
+
+    abstract void writePrometheus(StringBuilder out);
+
+    // Значения для JMX: имя атрибута -> число
+    abstract Map<String, Double> attributes();
+
+    void writeSample(StringBuilder out, String suffix, String extraLabel, String extraValue, double value) {
+        out.append(name).append(suffix);
+        if (labels.length > 0 || extraLabel != null) {
+            out.append('{');
+            for (int i = 0; i < labels.length; i += 2) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, labels[i], labels[i + 1]);
+            }
+            if (extraLabel != null) {
+                if (labels.length > 0) {
+                    out.append(',');
+                }
+                appendLabel(out, extraLabel, extraValue);
+            }
+            out.append('}');
+        }
+        out.append(' ').append(formatValue(value)).append('\n');
+    }
+
+    private static void appendLabel(StringBuilder out, String label, String value) {
+        out.append(label).append("=\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
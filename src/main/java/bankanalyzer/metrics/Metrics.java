@@ -0,0 +1,241 @@
+package bankanalyzer.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Реестр метрик процесса. Серия определяется именем и метками, метки передаются парами:
+ * <pre>
+ *   Metrics.global().timer("scraper_fetch_seconds", "Загрузка страницы", "bank", "sberbank")
+ * </pre>
+ * Повторный запрос той же серии возвращает существующий объект, поэтому его можно
+ * держать в поле или получать на месте. Снаружи метрики видны через JMX
+ * (домен bankanalyzer, после {@link #enableJmx()}) и в текстовом формате Prometheus
+ * ({@link #toPrometheusText()}, /metrics в API, файл через {@link #dumpPeriodically}).
+ */
+@Slf4j
+public final class Metrics {
+    private static final Metrics GLOBAL = new Metrics();
+    private static final String JMX_DOMAIN = "bankanalyzer";
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+    private volatile MBeanServer jmx;
+
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        private final ConcurrentMap<String, Metric> series = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private interface Factory {
+        Metric create(String name, String help, String[] labels);
+    }
+
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, "counter", labels, false,
+                (n, h, l) -> new Counter(n, h, l, null));
+    }
+
+    /**
+     * Счётчик, значение которого хранит владелец. Повторная регистрация заменяет источник:
+     * метрика отражает последний созданный объект.
+     */
+    public Counter counter(String name, String help, LongSupplier source, String... labels) {
+        return (Counter) register(name, help, "counter", labels, true,
+                (n, h, l) -> new Counter(n, h, l, source));
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) register(name, help, "gauge", labels, false,
+                (n, h, l) -> new Gauge(n, h, l, null));
+    }
+
+    public Gauge gauge(String name, String help, DoubleSupplier source, String... labels) {
+        return (Gauge) register(name, help, "gauge", labels, true,
+                (n, h, l) -> new Gauge(n, h, l, source));
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, "summary", labels, false,
+                (n, h, l) -> new Histogram(n, h, l, 1.0));
+    }
+
+    public Timer timer(String name, String help, String... labels) {
+        return (Timer) register(name, help, "summary", labels, false,
+                (n, h, l) -> new Timer(n, h, l));
+    }
+
+    private Metric register(String name, String help, String type, String[] labels, boolean replace,
+                            Factory factory) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Метки задаются парами имя-значение: " + name);
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Метрика " + name + " уже зарегистрирована с типом " + family.type);
+        }
+        String key = String.join("\u0000", labels);
+        Metric metric;
+        if (replace) {
+            metric = factory.create(name, help, labels.clone());
+            family.series.put(key, metric);
+        } else {
+            Metric existing = family.series.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            metric = family.series.computeIfAbsent(key, k -> factory.create(name, help, labels.clone()));
+        }
+        registerMBean(metric);
+        return metric;
+    }
+
+    /**
+     * Регистрирует все метрики, текущие и будущие, в платформенном MBeanServer.
+     */
+    public synchronized void enableJmx() {
+        if (jmx != null) {
+            return;
+        }
+        jmx = ManagementFactory.getPlatformMBeanServer();
+        for (Family family : families.values()) {
+            for (Metric metric : family.series.values()) {
+                registerMBean(metric);
+            }
+        }
+    }
+
+    private void registerMBean(Metric metric) {
+        MBeanServer server = jmx;
+        if (server == null) {
+            return;
+        }
+        try {
+            ObjectName objectName = objectName(metric);
+            synchronized (this) {
+                if (server.isRegistered(objectName)) {
+                    server.unregisterMBean(objectName);
+                }
+                server.registerMBean(new MetricMBean(metric), objectName);
+            }
+        } catch (JMException e) {
+            log.warn("Не удалось зарегистрировать метрику {} в JMX: {}", metric.getName(), e.getMessage());
+        }
+    }
+
+    private static ObjectName objectName(Metric metric) throws JMException {
+        StringBuilder name = new StringBuilder(JMX_DOMAIN)
+                .append(":type=Metrics,name=").append(metric.getName());
+        String[] labels = metric.labels();
+        for (int i = 0; i < labels.length; i += 2) {
+            name.append(',').append(labels[i]).append('=').append(ObjectName.quote(labels[i + 1]));
+        }
+        return new ObjectName(name.toString());
+    }
+
+    /**
+     * Все метрики в текстовом формате Prometheus 0.0.4, отсортированные по имени.
+     */
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        for (Family family : new TreeMap<>(families).values()) {
+            if (family.series.isEmpty()) {
+                continue;
+            }
+            out.append("# HELP ").append(family.name).append(' ')
+                    .append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            List<Metric> series = new ArrayList<>(new TreeMap<>(family.series).values());
+            for (Metric metric : series) {
+                metric.writePrometheus(out);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Атомарно переписывает файл текущими значениями: сборщик никогда не видит половину файла.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, toPrometheusText().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Периодическая выгрузка в файл (например, для textfile-коллектора node_exporter).
+     * При закрытии файл записывается последний раз.
+     */
+    public PeriodicDump dumpPeriodically(Path file, Duration period) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runnable dump = () -> {
+            try {
+                writeTo(file);
+            } catch (IOException e) {
+                log.warn("Ошибка выгрузки метрик в {}: {}", file, e.getMessage());
+            }
+        };
+        long millis = period.toMillis();
+        scheduler.scheduleWithFixedDelay(dump, millis, millis, TimeUnit.MILLISECONDS);
+        return new PeriodicDump(scheduler, dump);
+    }
+
+    /**
+     * Остановка периодической выгрузки с финальной записью файла.
+     */
+    public static final class PeriodicDump implements Closeable {
+        private final ScheduledExecutorService scheduler;
+        private final Runnable dump;
+
+        private PeriodicDump(ScheduledExecutorService scheduler, Runnable dump) {
+            this.scheduler = scheduler;
+            this.dump = dump;
+        }
+
+        @Override
+        public void close() {
+            scheduler.shutdownNow();
+            dump.run();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package bankanalyzer.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Гистограмма длительностей: пишется в наносекундах, экспортируется в секундах.
+ */
+public final class Timer extends Histogram {
+
+    Timer(String name, String help, String[] labels) {
+        super(name, help, labels, 1e9);
+    }
+
+    /**
+     * Записывает время, прошедшее с startNanos (значение System.nanoTime()).
+     */
+    public long recordSince(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        record(elapsed);
+        return elapsed;
+    }
+
+    public <T> T time(Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            recordSince(start);
+        }
+    }
+}
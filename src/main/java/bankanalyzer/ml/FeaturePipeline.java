@@ -0,0 +1,318 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.RateTable;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Построение признаков по временным рядам ставок каждого банка (ряд = банк + срок).
+ * Признаки наблюдения считаются только по нему и предыдущим наблюдениям ряда,
+ * меткой служит доходность следующего наблюдения того же ряда — так модель учится
+ * прогнозировать будущее, а не повторять текущее значение.
+ *
+ * Состояние рядов сохраняется между вызовами {@link #append}: каждое новое
+ * наблюдение обновляет скользящие окна за O(1), без пересчёта истории.
+ */
+public class FeaturePipeline implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int FEATURE_COUNT = 12;
+    public static final String SCHEMA = "v3:deposit,loan,spread,return,lagDeposit,lagReturn,"
+            + "meanDeposit,stdDeposit,meanReturn,stdReturn,termYears,termBucket->nextReturn";
+    public static final int DEFAULT_WINDOW = 5;
+
+    private final int window;
+    private final Map<String, SeriesState> series;
+    private int lastEpochDay = Integer.MIN_VALUE;
+
+    /**
+     * Результат обработки порции наблюдений. Массивы признаков хранятся в порядке 'f':
+     * признак j строки i лежит в элементе [j * rows + i].
+     */
+    public static final class Batch {
+        // Признаки каждой строки входной таблицы, в её порядке
+        private final int rows;
+        private final double[] features;
+        // Обучающие примеры: признаки наблюдения и доходность следующего за ним
+        private final int examples;
+        private final double[] exampleFeatures;
+        private final double[] exampleLabels;
+
+        private Batch(int rows, double[] features, int examples, double[] exampleFeatures, double[] exampleLabels) {
+            this.rows = rows;
+            this.features = features;
+            this.examples = examples;
+            this.exampleFeatures = exampleFeatures;
+            this.exampleLabels = exampleLabels;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public double[] features() {
+            return features;
+        }
+
+        public int examples() {
+            return examples;
+        }
+
+        public double[] exampleFeatures() {
+            return exampleFeatures;
+        }
+
+        public double[] exampleLabels() {
+            return exampleLabels;
+        }
+
+        /**
+         * Признаки строк [from, to) в отдельном буфере порядка 'f', по одному копированию на признак.
+         */
+        public double[] featureSlice(int from, int to) {
+            int n = to - from;
+            double[] slice = new double[n * FEATURE_COUNT];
+            for (int j = 0; j < FEATURE_COUNT; j++) {
+                System.arraycopy(features, j * rows + from, slice, j * n, n);
+            }
+            return slice;
+        }
+    }
+
+    private static final class SeriesState implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final RollingWindow deposits;
+        private final RollingWindow returns;
+        private double previousDeposit;
+        private double previousReturn;
+        private boolean hasPrevious;
+        private int previousEpochDay;
+        // Признаки последнего наблюдения, ждущие метку от следующего
+        private double[] pending;
+
+        SeriesState(int window) {
+            this.deposits = new RollingWindow(window);
+            this.returns = new RollingWindow(window);
+        }
+
+        SeriesState copy() {
+            SeriesState copy = new SeriesState(deposits.copy(), returns.copy());
+            copy.previousDeposit = previousDeposit;
+            copy.previousReturn = previousReturn;
+            copy.hasPrevious = hasPrevious;
+            copy.previousEpochDay = previousEpochDay;
+            copy.pending = pending == null ? null : pending.clone();
+            return copy;
+        }
+
+        private SeriesState(RollingWindow deposits, RollingWindow returns) {
+            this.deposits = deposits;
+            this.returns = returns;
+        }
+    }
+
+    public FeaturePipeline() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public FeaturePipeline(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window должен быть >= 1");
+        }
+        this.window = window;
+        this.series = new HashMap<>();
+    }
+
+    private FeaturePipeline(FeaturePipeline other) {
+        this.window = other.window;
+        this.series = new HashMap<>(other.series.size() * 2);
+        for (Map.Entry<String, SeriesState> entry : other.series.entrySet()) {
+            series.put(entry.getKey(), entry.getValue().copy());
+        }
+        this.lastEpochDay = other.lastEpochDay;
+    }
+
+    /**
+     * Независимая копия состояния, чтобы неудачное дообучение не испортило рабочий конвейер.
+     */
+    public FeaturePipeline copy() {
+        return new FeaturePipeline(this);
+    }
+
+    /**
+     * Признаки всей истории с нуля.
+     */
+    public Batch transform(RateTable data) {
+        series.clear();
+        lastEpochDay = Integer.MIN_VALUE;
+        return append(data);
+    }
+
+    /**
+     * Продолжает ряды новыми наблюдениями. Внутри ряда строки обрабатываются по дате.
+     */
+    public Batch append(RateTable data) {
+        int n = data.size();
+        double[] features = new double[n * FEATURE_COUNT];
+        ExampleCollector examples = new ExampleCollector();
+        double[] row = new double[FEATURE_COUNT];
+
+        for (int[] seriesRows : groupBySeries(data)) {
+            int first = seriesRows[0];
+            String key = seriesKey(data.bankName(first), data.termDays(first));
+            SeriesState state = series.computeIfAbsent(key, k -> new SeriesState(window));
+
+            for (int r : seriesRows) {
+                observe(state, data, r, row, examples);
+                for (int j = 0; j < FEATURE_COUNT; j++) {
+                    features[j * n + r] = row[j];
+                }
+                lastEpochDay = Math.max(lastEpochDay, data.epochDay(r));
+            }
+        }
+        return examples.toBatch(n, features);
+    }
+
+    /**
+     * Признаки одного наблюдения как продолжения накопленного ряда; состояние конвейера не меняется.
+     * Если наблюдение уже последнее в ряду, возвращаются его признаки, как их построил {@link #append}.
+     * Для нового ряда лаги и скользящие средние равны текущим значениям.
+     */
+    public double[] peek(String bankName, double depositRate, double loanRate, double investmentReturn,
+                         int epochDay, int termDays) {
+        SeriesState state = series.get(seriesKey(bankName, termDays));
+        if (state != null && state.pending != null && state.previousEpochDay == epochDay
+                && state.pending[0] == depositRate && state.pending[1] == loanRate
+                && state.pending[3] == investmentReturn) {
+            return state.pending.clone();
+        }
+
+        RateTable table = new RateTable(1);
+        table.add(bankName, depositRate, loanRate, investmentReturn, epochDay, termDays);
+        double[] row = new double[FEATURE_COUNT];
+        observe(state != null ? state.copy() : new SeriesState(window), table, 0, row, null);
+        return row;
+    }
+
+    public int getLastEpochDay() {
+        return lastEpochDay;
+    }
+
+    private void observe(SeriesState state, RateTable data, int r, double[] out, ExampleCollector examples) {
+        double deposit = data.depositRate(r);
+        double loan = data.loanRate(r);
+        double investmentReturn = data.investmentReturn(r);
+        int termDays = data.termDays(r);
+
+        // Предыдущее наблюдение ряда получает метку — текущую доходность
+        if (state.pending != null && examples != null) {
+            examples.add(state.pending, investmentReturn);
+        }
+
+        double lagDeposit = state.hasPrevious ? state.previousDeposit : deposit;
+        double lagReturn = state.hasPrevious ? state.previousReturn : investmentReturn;
+        state.deposits.add(deposit);
+        state.returns.add(investmentReturn);
+
+        out[0] = deposit;
+        out[1] = loan;
+        out[2] = loan - deposit;
+        out[3] = investmentReturn;
+        out[4] = lagDeposit;
+        out[5] = lagReturn;
+        out[6] = state.deposits.mean();
+        out[7] = state.deposits.std();
+        out[8] = state.returns.mean();
+        out[9] = state.returns.std();
+        out[10] = termDays / 365.0;
+        out[11] = termBucket(termDays);
+
+        state.previousDeposit = deposit;
+        state.previousReturn = investmentReturn;
+        state.hasPrevious = true;
+        state.previousEpochDay = data.epochDay(r);
+        state.pending = out.clone();
+    }
+
+    private static double termBucket(int termDays) {
+        if (termDays <= 90) return 0;
+        if (termDays <= 180) return 1;
+        if (termDays <= 365) return 2;
+        return 3;
+    }
+
+    /**
+     * Строки, сгруппированные по ряду (банк + срок) и упорядоченные по дате
+     * внутри ряда; при равной дате сохраняется порядок таблицы.
+     */
+    private static List<int[]> groupBySeries(RateTable data) {
+        Map<Long, Integer> seriesIds = new HashMap<>();
+        int n = data.size();
+        int[] seriesOf = new int[n];
+        List<int[]> counts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            long key = ((long) data.bankId(i) << 32) | (data.termDays(i) & 0xFFFFFFFFL);
+            Integer id = seriesIds.get(key);
+            if (id == null) {
+                id = counts.size();
+                seriesIds.put(key, id);
+                counts.add(new int[1]);
+            }
+            seriesOf[i] = id;
+            counts.get(id)[0]++;
+        }
+
+        long[][] keys = new long[counts.size()][];
+        for (int s = 0; s < keys.length; s++) {
+            keys[s] = new long[counts.get(s)[0]];
+            counts.get(s)[0] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            int s = seriesOf[i];
+            // Старшие 32 бита — день, младшие — номер строки: сортировка long упорядочит по дате
+            keys[s][counts.get(s)[0]++] = ((long) data.epochDay(i) << 32) | i;
+        }
+
+        List<int[]> groups = new ArrayList<>(keys.length);
+        for (long[] seriesKeys : keys) {
+            Arrays.sort(seriesKeys);
+            int[] rows = new int[seriesKeys.length];
+            for (int k = 0; k < rows.length; k++) {
+                rows[k] = (int) seriesKeys[k];
+            }
+            groups.add(rows);
+        }
+        return groups;
+    }
+
+    private static String seriesKey(String bankName, int termDays) {
+        return bankName + '\u0000' + termDays;
+    }
+
+    private static final class ExampleCollector {
+        private double[] rowMajor = new double[64 * FEATURE_COUNT];
+        private double[] labels = new double[64];
+        private int count;
+
+        void add(double[] features, double label) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                rowMajor = Arrays.copyOf(rowMajor, count * 2 * FEATURE_COUNT);
+            }
+            System.arraycopy(features, 0, rowMajor, count * FEATURE_COUNT, FEATURE_COUNT);
+            labels[count++] = label;
+        }
+
+        Batch toBatch(int rows, double[] features) {
+            double[] columnMajor = new double[count * FEATURE_COUNT];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < FEATURE_COUNT; j++) {
+                    columnMajor[j * count + i] = rowMajor[i * FEATURE_COUNT + j];
+                }
+            }
+            return new Batch(rows, features, count, columnMajor, Arrays.copyOf(labels, count));
+        }
+    }
+}
@@ -1,48 +1,137 @@
 package bankanalyzer.ml;
 
 import bankanalyzer.data.BankData;
-import java.util.Comparator;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.data.TopRows;
+import bankanalyzer.metrics.Metrics;
+import bankanalyzer.metrics.Timer;
+import lombok.extern.slf4j.Slf4j;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
+@Slf4j
 public class InvestmentRecommender {
+    public static final int DEFAULT_TOP_K = 5;
+
+    private static final Timer SNAPSHOT_QUERIES = Metrics.global().timer("recommender_query_seconds",
+            "Время ответа на запрос рекомендаций", "path", "snapshot");
+    private static final Timer TABLE_QUERIES = Metrics.global().timer("recommender_query_seconds",
+            "Время ответа на запрос рекомендаций", "path", "table");
+    private static final Timer PORTFOLIO_SOLVES = Metrics.global().timer("portfolio_solve_seconds",
+            "Время расчёта распределения по банкам");
+
     private final RatePredictor ratePredictor;
+    private final RecommendationCache cache = new RecommendationCache();
+    private final int topK;
 
     public InvestmentRecommender() {
-        this.ratePredictor = new RatePredictor();
+        this(DEFAULT_TOP_K);
+    }
+
+    /**
+     * @param topK сколько банков попадает в рекомендации
+     */
+    public InvestmentRecommender(int topK) {
+        this(new RatePredictor(), topK);
+    }
+
+    public InvestmentRecommender(RatePredictor ratePredictor, int topK) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("Число рекомендаций должно быть положительным");
+        }
+        this.ratePredictor = ratePredictor;
+        this.topK = topK;
+
+        Metrics metrics = Metrics.global();
+        metrics.counter("recommender_cache_hits_total", "Попадания в кэш рекомендаций", cache::getHits);
+        metrics.counter("recommender_cache_misses_total", "Промахи кэша рекомендаций", cache::getMisses);
+        metrics.gauge("recommender_cache_entries", "Записей в кэше рекомендаций", cache::size);
+    }
+
+    public int getTopK() {
+        return topK;
     }
 
     public List<BankData> getInvestmentRecommendations(List<BankData> bankDataList,
                                                        double investmentAmount,
                                                        int investmentTerm) {
-        System.out.println("Анализ данных для " + bankDataList.size() + " банков...");
+        return getInvestmentRecommendations(RateTable.of(bankDataList), investmentAmount, investmentTerm);
+    }
+
+    public List<BankData> getInvestmentRecommendations(RateTable rates,
+                                                       double investmentAmount,
+                                                       int investmentTerm) {
+        log.info("Анализ данных: {} записей", rates.size());
+        long start = System.nanoTime();
+        // Разовый снимок без версии: в кэш не попадает
+        List<BankData> recommendations = rankRecommendations(createSnapshot(rates, 0), investmentTerm);
+        TABLE_QUERIES.recordSince(start);
+        return recommendations;
+    }
 
-        // Обучаем модель на имеющихся данных
-        if (!ratePredictor.isModelTrained()) {
-            System.out.println("Обучение модели на текущих данных...");
-            ratePredictor.trainModel(bankDataList);
+    /**
+     * Обучает модель при необходимости и прогнозирует доходность всех строк таблицы.
+     * Дорогая часть работы; результат переиспользуется всеми запросами до следующего обновления.
+     */
+    public RateSnapshot createSnapshot(RateTable rates, long version) {
+        // Обучаем модель, если сохранённая не подходит к текущим данным
+        if (ratePredictor.ensureTrained(rates)) {
+            log.info("Модель обучена на текущих данных");
         }
 
-        // Прогнозируем доходность для каждого банка
-        List<BankData> predictions = bankDataList.stream()
-                .map(bank -> {
-                    double predictedReturn = ratePredictor.predictReturn(bank);
-                    return new BankData(
-                            bank.getBankName(),
-                            bank.getDepositRate(),
-                            bank.getLoanRate(),
-                            predictedReturn,
-                            bank.getDate(),
-                            investmentTerm // Используем указанный пользователем срок
-                    );
-                })
-                .collect(Collectors.toList());
-
-        // Сортируем по прогнозируемой доходности
-        return predictions.stream()
-                .sorted(Comparator.comparingDouble(BankData::getInvestmentReturn).reversed())
-                .limit(5) // Топ-5 рекомендаций
-                .collect(Collectors.toList());
+        // Прогнозируем доходность для всех банков одним пакетным проходом
+        return new RateSnapshot(version, rates, ratePredictor.predictReturns(rates));
+    }
+
+    /**
+     * Рекомендации по готовому снимку: только чтение памяти, без обучения и ввода-вывода.
+     * Результат кэшируется по версии снимка и сроку, поэтому повторный запрос с тем же
+     * сроком отдаёт готовый неизменяемый список. Сумма на рекомендации не влияет.
+     */
+    public List<BankData> getInvestmentRecommendations(RateSnapshot snapshot, int investmentTerm) {
+        long start = System.nanoTime();
+        List<BankData> recommendations = cache.get(snapshot.getVersion(), investmentTerm,
+                () -> rankRecommendations(snapshot, investmentTerm));
+        SNAPSHOT_QUERIES.recordSince(start);
+        return recommendations;
+    }
+
+    /**
+     * Распределяет сумму по последним продуктам (банк, срок) снимка с учётом прогнозной доходности.
+     */
+    public PortfolioAllocation allocatePortfolio(RateSnapshot snapshot, double investmentAmount,
+                                                 int investmentTerm, PortfolioAllocator allocator) {
+        PortfolioAllocation allocation = allocator.allocate(snapshot.latestProducts(), investmentAmount, investmentTerm);
+        PORTFOLIO_SOLVES.record(allocation.getSolveNanos());
+        return allocation;
+    }
+
+    public RecommendationCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Лучшие topK банков по прогнозу: у каждого банка берётся только последнее наблюдение,
+     * затем ограниченная куча выбирает лучших без сортировки всех строк.
+     */
+    private List<BankData> rankRecommendations(RateSnapshot snapshot, int investmentTerm) {
+        RateTable rates = snapshot.rates();
+        int[] candidates = rates.latestRowPerBank();
+        int[] best = TopRows.select(candidates, snapshot::predictedReturn, topK,
+                candidates.length >= TopRows.PARALLEL_THRESHOLD);
+
+        List<BankData> recommendations = new ArrayList<>(best.length);
+        for (int row : best) {
+            recommendations.add(new BankData(
+                    rates.bankName(row),
+                    rates.depositRate(row),
+                    rates.loanRate(row),
+                    snapshot.predictedReturn(row),
+                    rates.date(row),
+                    investmentTerm // Используем указанный пользователем срок
+            ));
+        }
+        return recommendations;
     }
 
     public String generateRecommendationReport(List<BankData> recommendations,
@@ -102,6 +191,53 @@ public class InvestmentRecommender {
         return report.toString();
     }
 
+    public String generateAllocationReport(PortfolioAllocation allocation) {
+        StringBuilder report = new StringBuilder();
+        report.append("╔══════════════════════════════════════════════════════════╗\n");
+        report.append("║                РАСПРЕДЕЛЕНИЕ ПО БАНКАМ                   ║\n");
+        report.append("╠══════════════════════════════════════════════════════════╣\n");
+
+        if (allocation.getPositions().isEmpty()) {
+            report.append("║                 Нет данных для распределения             ║\n");
+            report.append("╚══════════════════════════════════════════════════════════╝\n");
+            return report.toString();
+        }
+
+        report.append(String.format("║ %-15s %-12s %-6s %-8s %-9s %-1s ║\n",
+                "Банк", "Сумма", "Доля", "Доходн.", "Прибыль", "С"));
+        report.append("╠══════════════════════════════════════════════════════════╣\n");
+
+        for (PortfolioAllocation.Position position : allocation.getPositions()) {
+            BankData product = position.getProduct();
+            String bankName = product.getBankName();
+            if (bankName.length() > 15) bankName = bankName.substring(0, 15);
+
+            report.append(String.format("║ %-15s %-10.0fр. %-5.1f%% %-7.2f%% %-7.0fр. %-1s ║\n",
+                    bankName,
+                    position.getAmount(),
+                    position.getAmount() / allocation.getAmount() * 100,
+                    product.getInvestmentReturn(),
+                    position.getExpectedProfit(),
+                    position.isTermMatched() ? "✓" : "≈"));
+        }
+
+        report.append("╠══════════════════════════════════════════════════════════╣\n");
+        report.append(String.format("║ Средняя доходность портфеля: %-26.2f%% ║\n", allocation.getExpectedReturn()));
+        report.append(String.format("║ Ожидаемая прибыль: %-35.0fр. ║\n", allocation.getExpectedProfit()));
+        if (allocation.getUnallocated() > 0) {
+            report.append(String.format("║ Не размещено в пределах лимитов: %-21.0fр. ║\n",
+                    allocation.getUnallocated()));
+        }
+        report.append(String.format("║ Время расчёта: %-38.3f мс ║\n", allocation.getSolveNanos() / 1e6));
+        report.append("╚══════════════════════════════════════════════════════════╝\n");
+        if (!allocation.isMinBanksSatisfied()) {
+            report.append("Банков с данными меньше, чем требуется для диверсификации.\n");
+        }
+        report.append("С: ✓ — срок продукта совпадает с запрошенным, ≈ — ближайший доступный.\n");
+
+        return report.toString();
+    }
+
     public String generateDetailedReport(BankData bank, double investmentAmount) {
         double expectedProfit = investmentAmount * bank.getInvestmentReturn() / 100;
         double expectedTotal = investmentAmount + expectedProfit;
@@ -0,0 +1,28 @@
+package bankanalyzer.ml;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Serializable;
+
+/**
+ * Сведения об обученной модели, которые хранятся в архиве вместе с сетью:
+ * схема признаков и отпечаток обучающих данных решают, нужно ли переобучение,
+ * а время полного обучения и ошибка на валидации — когда дообучения уже мало.
+ */
+@Getter
+@AllArgsConstructor
+public class ModelMetadata implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    private final String featureSchema;
+    private final long dataFingerprint;
+    private final int rowCount;
+    // Время последнего полного обучения
+    private final long trainedAtMillis;
+    // Время последнего дообучения (или полного обучения)
+    private final long updatedAtMillis;
+    // Последний день, вошедший в обучение
+    private final int lastEpochDay;
+    private final double validationMse;
+}
@@ -0,0 +1,63 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.BankData;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Результат {@link PortfolioAllocator}: доли по банкам в порядке убывания доходности.
+ */
+@Getter
+public class PortfolioAllocation {
+    private final double amount;
+    private final int termDays;
+    private final List<Position> positions;
+    // Сумма, которую не удалось разместить в пределах лимитов
+    private final double unallocated;
+    // false, если банков с продуктами меньше, чем требуется
+    private final boolean minBanksSatisfied;
+    private final long solveNanos;
+
+    @Getter
+    public static class Position {
+        private final BankData product;
+        private final double amount;
+        private final double expectedProfit;
+        private final boolean termMatched;
+
+        Position(BankData product, double amount, double expectedProfit, boolean termMatched) {
+            this.product = product;
+            this.amount = amount;
+            this.expectedProfit = expectedProfit;
+            this.termMatched = termMatched;
+        }
+    }
+
+    PortfolioAllocation(double amount, int termDays, List<Position> positions, double unallocated,
+                        boolean minBanksSatisfied, long solveNanos) {
+        this.amount = amount;
+        this.termDays = termDays;
+        this.positions = Collections.unmodifiableList(positions);
+        this.unallocated = unallocated;
+        this.minBanksSatisfied = minBanksSatisfied;
+        this.solveNanos = solveNanos;
+    }
+
+    public double getExpectedProfit() {
+        double profit = 0;
+        for (Position position : positions) {
+            profit += position.expectedProfit;
+        }
+        return profit;
+    }
+
+    /**
+     * Средневзвешенная доходность размещённой части, % годовых.
+     */
+    public double getExpectedReturn() {
+        double allocated = amount - unallocated;
+        return allocated > 0 ? getExpectedProfit() / allocated * 100 : 0.0;
+    }
+}
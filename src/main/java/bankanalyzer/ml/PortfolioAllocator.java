@@ -0,0 +1,136 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.BankData;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Распределение суммы по банкам с максимальной ожидаемой доходностью.
+ *
+ * Ограничения:
+ * <ul>
+ *   <li>в один банк не больше лимита страхования вкладов (по умолчанию 1,4 млн руб.);</li>
+ *   <li>не меньше minBanks банков: в один банк не больше amount / minBanks;</li>
+ *   <li>срок продукта совпадает с запрошенным с допуском termTolerance; банки без
+ *       подходящего срока используются, только если подходящих не хватило.</li>
+ * </ul>
+ * Доходность линейна по сумме, а ограничения — верхние границы по банкам, поэтому задача
+ * сводится к непрерывному рюкзаку: внутри банка все деньги идут в его лучший продукт,
+ * банки заполняются до границы по убыванию доходности. Такой жадный выбор оптимален
+ * и стоит O(P + B log B) для P продуктов и B банков.
+ */
+public class PortfolioAllocator {
+    public static final double DEFAULT_INSURANCE_CAP = 1_400_000;
+    public static final int DEFAULT_MIN_BANKS = 1;
+    public static final double DEFAULT_TERM_TOLERANCE = 0.25;
+
+    private final double insuranceCap;
+    private final int minBanks;
+    private final double termTolerance;
+
+    public PortfolioAllocator() {
+        this(DEFAULT_INSURANCE_CAP, DEFAULT_MIN_BANKS, DEFAULT_TERM_TOLERANCE);
+    }
+
+    /**
+     * @param insuranceCap  предел суммы в одном банке, руб.
+     * @param minBanks      минимальное число банков в портфеле
+     * @param termTolerance допустимое относительное отклонение срока продукта от запрошенного
+     */
+    public PortfolioAllocator(double insuranceCap, int minBanks, double termTolerance) {
+        if (!(insuranceCap > 0)) {
+            throw new IllegalArgumentException("Лимит на банк должен быть положительным");
+        }
+        if (minBanks < 1) {
+            throw new IllegalArgumentException("Минимальное число банков должно быть положительным");
+        }
+        if (termTolerance < 0) {
+            throw new IllegalArgumentException("Допуск по сроку не может быть отрицательным");
+        }
+        this.insuranceCap = insuranceCap;
+        this.minBanks = minBanks;
+        this.termTolerance = termTolerance;
+    }
+
+    /**
+     * @param products продукты банков; доходность — прогноз в investmentReturn, % годовых
+     */
+    public PortfolioAllocation allocate(List<BankData> products, double amount, int termDays) {
+        long start = System.nanoTime();
+        if (!(amount > 0)) {
+            throw new IllegalArgumentException("Сумма должна быть положительной");
+        }
+
+        // Лучший продукт каждого банка: сначала подходящий по сроку, затем по доходности
+        Map<String, BankData> bestByBank = new HashMap<>();
+        for (BankData product : products) {
+            if (!Double.isFinite(product.getInvestmentReturn())) {
+                continue;
+            }
+            BankData best = bestByBank.get(product.getBankName());
+            if (best == null || better(product, best, termDays)) {
+                bestByBank.put(product.getBankName(), product);
+            }
+        }
+
+        List<BankData> ranked = new ArrayList<>(bestByBank.values());
+        ranked.sort(Comparator.comparing((BankData product) -> !matchesTerm(product, termDays))
+                .thenComparing(Comparator.comparingDouble(BankData::getInvestmentReturn).reversed())
+                .thenComparing(BankData::getBankName));
+
+        int requiredBanks = Math.min(minBanks, Math.max(1, ranked.size()));
+        double perBankLimit = Math.min(insuranceCap, amount / requiredBanks);
+
+        List<PortfolioAllocation.Position> positions = new ArrayList<>();
+        double remaining = amount;
+        for (BankData product : ranked) {
+            if (remaining <= 0) {
+                break;
+            }
+            double share = Math.min(perBankLimit, remaining);
+            positions.add(new PortfolioAllocation.Position(product, share,
+                    share * product.getInvestmentReturn() / 100, matchesTerm(product, termDays)));
+            remaining -= share;
+        }
+
+        return new PortfolioAllocation(amount, termDays, positions, Math.max(0, remaining),
+                ranked.size() >= minBanks, System.nanoTime() - start);
+    }
+
+    private boolean better(BankData candidate, BankData current, int termDays) {
+        boolean candidateMatches = matchesTerm(candidate, termDays);
+        boolean currentMatches = matchesTerm(current, termDays);
+        if (candidateMatches != currentMatches) {
+            return candidateMatches;
+        }
+        if (!candidateMatches) {
+            // Из неподходящих берём ближайший по сроку
+            int candidateGap = Math.abs(candidate.getTermDays() - termDays);
+            int currentGap = Math.abs(current.getTermDays() - termDays);
+            if (candidateGap != currentGap) {
+                return candidateGap < currentGap;
+            }
+        }
+        return candidate.getInvestmentReturn() > current.getInvestmentReturn();
+    }
+
+    private boolean matchesTerm(BankData product, int termDays) {
+        return Math.abs(product.getTermDays() - termDays) <= termDays * termTolerance;
+    }
+
+    public double getInsuranceCap() {
+        return insuranceCap;
+    }
+
+    public int getMinBanks() {
+        return minBanks;
+    }
+
+    public double getTermTolerance() {
+        return termTolerance;
+    }
+}
@@ -10,139 +10,584 @@ import org.deeplearning4j.util.ModelSerializer;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.SplitTestAndTrain;
+import org.nd4j.linalg.dataset.ViewIterator;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.preprocessor.NormalizerStandardize;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Adam;
 import org.nd4j.linalg.lossfunctions.LossFunctions;
 import bankanalyzer.data.BankData;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.metrics.Counter;
+import bankanalyzer.metrics.Metrics;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Прогноз доходности нейросетью. Обучение и дообучение выполняются под одной
+ * блокировкой и на собственной копии сети, а готовая модель публикуется неизменяемым
+ * {@link ModelState} через {@link AtomicReference}: прогнозы не ждут окончания обучения
+ * и всегда видят согласованные сеть, нормализатор и метаданные.
+ *
+ * Сами вызовы ND4J идут под общей блокировкой {@link #NATIVE_LOCK}: в 1.0.0-M2 параллельные
+ * операции из разных потоков, даже на разных копиях сети, периодически роняют JVM в нативном
+ * коде. Обучение отпускает её между эпохами, так что прогнозы ждут не дольше одной эпохи.
+ */
+@Slf4j
 public class RatePredictor {
-    private MultiLayerNetwork model;
-    private final String MODEL_PATH = "models/rate_predictor.zip";
-    private boolean isTrained = false;
+    private static final int FEATURE_COUNT = FeaturePipeline.FEATURE_COUNT;
+    // Меняется при любом изменении набора признаков, метки или архитектуры сети
+    static final String FEATURE_SCHEMA = "standardized " + FeaturePipeline.SCHEMA + "; dense 10x10";
+    private static final String METADATA_KEY = "metadata";
+    private static final String REPLAY_KEY = "replay";
+    private static final String PIPELINE_KEY = "pipeline";
+    private static final String DEFAULT_MODEL_PATH = "models/rate_predictor.zip";
+    private static final Duration DEFAULT_MAX_MODEL_AGE = Duration.ofDays(7);
+    private static final int DEFAULT_BATCH_SIZE = 4096;
+
+    private static final long SEED = 12345;
+    private static final int TRAIN_BATCH_SIZE = 256;
+    private static final int MAX_EPOCHS = 500;
+    // Эпох без улучшения на валидации до остановки
+    private static final int PATIENCE = 25;
+    private static final double MIN_IMPROVEMENT = 1e-5;
+    private static final double VALIDATION_FRACTION = 0.2;
+    private static final int MIN_ROWS_FOR_HOLDOUT = 20;
+
+    // Дообучение: эпох на порцию, примеров истории на одну новую строку и размер выборки истории
+    private static final int UPDATE_EPOCHS = 5;
+    private static final int REPLAY_PER_NEW_ROW = 4;
+    private static final int REPLAY_CAPACITY = 2048;
+    // Если новых строк больше этой доли истории, дешевле обучить заново
+    private static final double MAX_INCREMENTAL_SHARE = 0.5;
+    // Дрейф: MSE на новых данных превышает MSE валидации в DRIFT_FACTOR раз
+    private static final double DRIFT_FACTOR = 3.0;
+    private static final double MIN_DRIFT_BASELINE = 0.05;
+
+    // Все операции ND4J в процессе, включая output(), который меняет внутреннее состояние сети
+    private static final Object NATIVE_LOCK = new Object();
+
+    private static final Metrics METRICS = Metrics.global();
+
+    /**
+     * Опубликованная модель. Сеть после публикации не обучается, для дообучения
+     * снимается копия; replay меняется только под блокировкой обучения и в прогнозах не участвует.
+     */
+    private static final class ModelState {
+        private final MultiLayerNetwork model;
+        private final NormalizerStandardize normalizer;
+        private final ModelMetadata metadata;
+        private final ReplayBuffer replay;
+        // Состояние рядов после последнего обучения: новые наблюдения продолжают его
+        private final FeaturePipeline pipeline;
+
+        ModelState(MultiLayerNetwork model, NormalizerStandardize normalizer, ModelMetadata metadata,
+                   ReplayBuffer replay, FeaturePipeline pipeline) {
+            this.model = model;
+            this.normalizer = normalizer;
+            this.metadata = metadata;
+            this.replay = replay;
+            this.pipeline = pipeline;
+        }
+    }
+
+    private final AtomicReference<ModelState> state = new AtomicReference<>();
+    private final Object trainLock = new Object();
+    private final File modelFile;
+    private final Duration maxModelAge;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    public RatePredictor() {
+        this(DEFAULT_MODEL_PATH, DEFAULT_MAX_MODEL_AGE);
+    }
+
+    public RatePredictor(String modelPath, Duration maxModelAge) {
+        this.modelFile = new File(modelPath);
+        this.maxModelAge = maxModelAge;
+        restoreModel();
+    }
+
+    /**
+     * Приводит модель в соответствие с данными с минимальными затратами:
+     * ничего не делает, если данные не менялись; дообучает на новых днях,
+     * если модель свежая и дрейфа нет; иначе обучает заново на всей истории.
+     *
+     * @return true, если модель была обучена или дообучена
+     */
+    public boolean ensureTrained(RateTable data) {
+        synchronized (trainLock) {
+            long fingerprint = fingerprint(data);
+            ModelState current = state.get();
+            ModelMetadata metadata = current != null ? current.metadata : null;
+            if (metadata != null && FEATURE_SCHEMA.equals(metadata.getFeatureSchema())) {
+                long ageMillis = System.currentTimeMillis() - metadata.getTrainedAtMillis();
+                if (ageMillis < maxModelAge.toMillis()) {
+                    if (metadata.getDataFingerprint() == fingerprint) {
+                        return false;
+                    }
+                    RateTable newRows = rowsAfter(data, metadata.getLastEpochDay());
+                    if (newRows.size() <= data.size() * MAX_INCREMENTAL_SHARE
+                            && updateModel(newRows, fingerprint, data.size())) {
+                        return !newRows.isEmpty();
+                    }
+                } else {
+                    log.info("Модель устарела, выполняется полное переобучение");
+                }
+            }
+            trainModel(data);
+            return state.get() != current;
+        }
+    }
+
+    public boolean update(List<BankData> newRows) {
+        return update(RateTable.of(newRows));
+    }
+
+    /**
+     * Дообучает сохранённую сеть на новых наблюдениях вперемешку с выборкой истории.
+     * Стоимость зависит от числа новых строк, а не от размера истории.
+     *
+     * @return false, если модели нет или обнаружен дрейф и нужно полное обучение
+     */
+    public boolean update(RateTable newRows) {
+        synchronized (trainLock) {
+            ModelState current = state.get();
+            if (current == null || current.metadata == null) {
+                return false;
+            }
+            return updateModel(newRows, current.metadata.getDataFingerprint() + fingerprint(newRows),
+                    current.metadata.getRowCount() + newRows.size());
+        }
+    }
+
+    // Вызывается под trainLock
+    private boolean updateModel(RateTable newRows, long fingerprint, int rowCount) {
+        ModelState current = state.get();
+        if (current == null || current.metadata == null || current.replay == null || current.pipeline == null) {
+            return false;
+        }
+        ModelMetadata metadata = current.metadata;
+        NormalizerStandardize normalizer = current.normalizer;
+
+        try {
+            long startNanos = System.nanoTime();
+
+            // Новые наблюдения продолжают ряды: каждое даёт метку предыдущему
+            FeaturePipeline next = current.pipeline.copy();
+            FeaturePipeline.Batch batch = next.append(newRows);
+            int n = batch.examples();
+            int history = 0;
+            MultiLayerNetwork network = current.model;
+
+            if (n > 0) {
+                DataSet mixed;
+                synchronized (NATIVE_LOCK) {
+                    DataSet fresh = new DataSet(
+                            Nd4j.create(batch.exampleFeatures(), new long[]{n, FEATURE_COUNT}, 'f'),
+                            Nd4j.create(batch.exampleLabels(), new long[]{n, 1}, 'c'));
+                    normalizer.transform(fresh);
+
+                    // Опубликованную сеть не трогаем: оценка и дообучение идут на копии
+                    network = current.model.clone();
+
+                    // Дрейф: новые данные объясняются заметно хуже, чем валидация при обучении
+                    double freshMse = network.score(fresh);
+                    double baseline = Math.max(metadata.getValidationMse(), MIN_DRIFT_BASELINE);
+                    if (freshMse > baseline * DRIFT_FACTOR) {
+                        log.info("Обнаружен дрейф данных (MSE {} против {}), нужно полное обучение",
+                                String.format("%.4f", freshMse), String.format("%.4f", baseline));
+                        return false;
+                    }
+
+                    DataSet replayed = current.replay.sample(n * REPLAY_PER_NEW_ROW);
+                    history = replayed.numExamples();
+                    mixed = fresh;
+                    if (history > 0) {
+                        normalizer.transform(replayed);
+                        mixed = DataSet.merge(Arrays.asList(fresh, replayed));
+                    }
+                }
+
+                DataSetIterator batches = new ViewIterator(mixed, TRAIN_BATCH_SIZE);
+                for (int epoch = 0; epoch < UPDATE_EPOCHS; epoch++) {
+                    synchronized (NATIVE_LOCK) {
+                        mixed.shuffle(SEED + epoch);
+                        batches.reset();
+                        network.fit(batches);
+                    }
+                    epochCounter("update").increment();
+                }
+                recordTraining("update", startNanos, (long) mixed.numExamples() * UPDATE_EPOCHS);
+
+                current.replay.offer(batch.exampleFeatures(), batch.exampleLabels(), n);
+            }
+
+            ModelState updated = new ModelState(network, normalizer,
+                    new ModelMetadata(FEATURE_SCHEMA, fingerprint, rowCount,
+                            metadata.getTrainedAtMillis(), System.currentTimeMillis(),
+                            Math.max(metadata.getLastEpochDay(), next.getLastEpochDay()),
+                            metadata.getValidationMse()),
+                    current.replay, next);
+            state.set(updated);
+            saveModel(updated);
+
+            if (n > 0) {
+                log.info("Модель дообучена на {} новых и {} исторических примерах за {} мс",
+                        n, history, (System.nanoTime() - startNanos) / 1_000_000);
+            }
+            return true;
+        } catch (Exception e) {
+            log.error("Ошибка дообучения модели", e);
+            return false;
+        }
+    }
+
+    // Строки после последнего учтённого дня; правки уже учтённых дней войдут в следующее полное обучение
+    private static RateTable rowsAfter(RateTable data, int epochDay) {
+        int count = 0;
+        for (int i = 0; i < data.size(); i++) {
+            if (data.epochDay(i) > epochDay) count++;
+        }
+        int[] rows = new int[count];
+        for (int i = 0, k = 0; i < data.size(); i++) {
+            if (data.epochDay(i) > epochDay) rows[k++] = i;
+        }
+        return data.select(rows);
+    }
 
     public void trainModel(List<BankData> trainingData) {
+        trainModel(trainingData == null ? new RateTable() : RateTable.of(trainingData));
+    }
+
+    public void trainModel(RateTable trainingData) {
         if (trainingData == null || trainingData.isEmpty()) {
-            System.out.println("Нет данных для обучения. Используются случайные значения.");
+            log.warn("Нет данных для обучения. Используются случайные значения.");
             return;
         }
+        synchronized (trainLock) {
+            train(trainingData);
+        }
+    }
 
+    private void train(RateTable trainingData) {
         try {
-            // Подготовка данных
-            INDArray features = prepareFeatures(trainingData);
-            INDArray labels = prepareLabels(trainingData);
-
-            DataSet dataSet = new DataSet(features, labels);
-
-            // Создание модели
-            MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
-                    .seed(12345)
-                    .updater(new Adam(0.001))
-                    .weightInit(WeightInit.XAVIER)
-                    .list()
-                    .layer(new DenseLayer.Builder()
-                            .nIn(4)
-                            .nOut(10)
-                            .activation(Activation.RELU)
-                            .build())
-                    .layer(new DenseLayer.Builder()
-                            .nIn(10)
-                            .nOut(10)
-                            .activation(Activation.RELU)
-                            .build())
-                    .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
-                            .nIn(10)
-                            .nOut(1)
-                            .activation(Activation.IDENTITY)
-                            .build())
-                    .build();
-
-            model = new MultiLayerNetwork(conf);
-            model.init();
-
-            // Обучение
-            for (int i = 0; i < 500; i++) {
-                model.fit(dataSet);
-                if (i % 100 == 0) {
-                    System.out.println("Эпоха обучения: " + i);
+            long startNanos = System.nanoTime();
+
+            // Признаки по рядам; меткой служит доходность следующего наблюдения банка
+            FeaturePipeline trainedPipeline = new FeaturePipeline();
+            FeaturePipeline.Batch batch = trainedPipeline.transform(trainingData);
+            int rows = batch.examples();
+            if (rows == 0) {
+                log.warn("Недостаточно истории для обучения: нужно хотя бы два наблюдения по банку");
+                return;
+            }
+
+            DataSet train;
+            DataSet validation;
+            NormalizerStandardize featureNormalizer = new NormalizerStandardize();
+            MultiLayerNetwork network;
+            INDArray bestParams;
+            synchronized (NATIVE_LOCK) {
+                // Перемешиваем и откладываем часть для валидации
+                DataSet all = new DataSet(Nd4j.create(batch.exampleFeatures(), new long[]{rows, FEATURE_COUNT}, 'f'),
+                        Nd4j.create(batch.exampleLabels(), new long[]{rows, 1}, 'c'));
+                all.shuffle(SEED);
+                train = all;
+                validation = all;
+                if (all.numExamples() >= MIN_ROWS_FOR_HOLDOUT) {
+                    SplitTestAndTrain split = all.splitTestAndTrain(1.0 - VALIDATION_FRACTION);
+                    train = split.getTrain();
+                    validation = split.getTest();
+                }
+
+                // Нормализация признаков по статистике обучающей части
+                featureNormalizer.fit(train);
+                featureNormalizer.transform(train);
+                if (validation != train) {
+                    featureNormalizer.transform(validation);
+                }
+
+                network = buildNetwork();
+                bestParams = network.params().dup();
+            }
+            DataSetIterator batches = new ViewIterator(train, TRAIN_BATCH_SIZE);
+
+            // Обучение мини-батчами с ранней остановкой по MSE на валидации
+            double bestScore = Double.MAX_VALUE;
+            int bestEpoch = 0;
+            int epoch = 0;
+            for (; epoch < MAX_EPOCHS && epoch - bestEpoch <= PATIENCE; epoch++) {
+                double score;
+                synchronized (NATIVE_LOCK) {
+                    train.shuffle(SEED + epoch);
+                    batches.reset();
+                    network.fit(batches);
+
+                    score = network.score(validation);
+                    if (score < bestScore - MIN_IMPROVEMENT) {
+                        bestScore = score;
+                        bestParams = network.params().dup();
+                        bestEpoch = epoch;
+                    }
                 }
+                epochCounter("full").increment();
+                METRICS.gauge("predictor_validation_mse", "MSE на валидации после последней эпохи").set(score);
+                if (epoch % 100 == 0 && log.isDebugEnabled()) {
+                    log.debug("Эпоха обучения: {}, MSE на валидации: {}", epoch, String.format("%.4f", score));
+                }
+            }
+            synchronized (NATIVE_LOCK) {
+                network.setParams(bestParams);
             }
 
-            // Сохранение модели
-            saveModel();
-            isTrained = true;
-            System.out.println("Модель успешно обучена и сохранена");
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            double samplesPerSecond = recordTraining("full", startNanos, (long) train.numExamples() * epoch);
+            log.info("Обучение завершено: {} эпох (лучшая {}), MSE на валидации {}, {} примеров/с, {} с",
+                    epoch, bestEpoch, String.format("%.4f", bestScore), Math.round(samplesPerSecond),
+                    String.format("%.2f", seconds));
+
+            // Публикуем модель только после успешного обучения
+            ReplayBuffer history = new ReplayBuffer(REPLAY_CAPACITY, FEATURE_COUNT);
+            history.offer(batch.exampleFeatures(), batch.exampleLabels(), rows);
+
+            long now = System.currentTimeMillis();
+            ModelState trained = new ModelState(network, featureNormalizer,
+                    new ModelMetadata(FEATURE_SCHEMA, fingerprint(trainingData), trainingData.size(),
+                            now, now, trainedPipeline.getLastEpochDay(), bestScore),
+                    history, trainedPipeline);
+            state.set(trained);
+            saveModel(trained);
+            log.info("Модель успешно обучена и сохранена: {}", modelFile);
 
         } catch (Exception e) {
-            System.err.println("Ошибка при обучении модели: " + e.getMessage());
-            isTrained = false;
+            log.error("Ошибка при обучении модели", e);
         }
     }
 
+    private static Counter epochCounter(String mode) {
+        return METRICS.counter("predictor_epochs_total", "Эпохи обучения", "mode", mode);
+    }
+
+    // Записывает длительность и скорость обучения; возвращает примеров в секунду
+    private static double recordTraining(String mode, long startNanos, long samples) {
+        long nanos = METRICS.timer("predictor_training_seconds", "Длительность обучения", "mode", mode)
+                .recordSince(startNanos);
+        double samplesPerSecond = samples / Math.max(nanos / 1e9, 1e-9);
+        METRICS.gauge("predictor_training_samples_per_second", "Скорость последнего обучения, примеров/с",
+                "mode", mode).set(samplesPerSecond);
+        return samplesPerSecond;
+    }
+
+    private MultiLayerNetwork buildNetwork() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(SEED)
+                .updater(new Adam(0.001))
+                .weightInit(WeightInit.XAVIER)
+                .list()
+                .layer(new DenseLayer.Builder()
+                        .nIn(FEATURE_COUNT)
+                        .nOut(10)
+                        .activation(Activation.RELU)
+                        .build())
+                .layer(new DenseLayer.Builder()
+                        .nIn(10)
+                        .nOut(10)
+                        .activation(Activation.RELU)
+                        .build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE)
+                        .nIn(10)
+                        .nOut(1)
+                        .activation(Activation.IDENTITY)
+                        .build())
+                .build();
+
+        MultiLayerNetwork network = new MultiLayerNetwork(conf);
+        network.init();
+        return network;
+    }
+
     public double predictReturn(BankData currentData) {
-        if (!isTrained) {
+        ModelState current = state.get();
+        if (current == null) {
             // Если модель не обучена, используем эвристику
             return calculateHeuristicReturn(currentData);
         }
 
         try {
-            INDArray input = Nd4j.create(new double[]{
-                    currentData.getDepositRate(),
-                    currentData.getLoanRate(),
-                    currentData.getInvestmentReturn(),
-                    currentData.getTermDays() / 365.0
-            }, new int[]{1, 4});
-
-            INDArray output = model.output(input);
-            return output.getDouble(0);
+            // Продолжаем ряды опубликованной модели, чтобы прогноз совпадал с пакетным по той же истории
+            long start = System.nanoTime();
+            FeaturePipeline pipeline = current.pipeline != null ? current.pipeline : new FeaturePipeline();
+            double[] features = pipeline.peek(currentData.getBankName(), currentData.getDepositRate(),
+                    currentData.getLoanRate(), currentData.getInvestmentReturn(),
+                    (int) currentData.getDate().toEpochDay(), currentData.getTermDays());
+            double prediction;
+            synchronized (NATIVE_LOCK) {
+                INDArray input = Nd4j.create(features, new long[]{1, FEATURE_COUNT}, 'f');
+                current.normalizer.transform(input);
+                prediction = current.model.output(input).getDouble(0);
+            }
+            recordInference("single", start, 1);
+            return prediction;
 
         } catch (Exception e) {
-            System.err.println("Ошибка предсказания: " + e.getMessage());
+            log.warn("Ошибка предсказания: {}", e.getMessage());
             return calculateHeuristicReturn(currentData);
         }
     }
 
+    public double[] predictReturns(List<BankData> data) {
+        return predictReturns(RateTable.of(data));
+    }
+
+    /**
+     * Прогноз доходности следующего периода для всех строк таблицы. Признаки строятся
+     * по истории каждого банка в таблице и прогоняются через сеть пачками по batchSize строк.
+     */
+    public double[] predictReturns(RateTable data) {
+        int n = data.size();
+        double[] result = new double[n];
+        ModelState current = state.get();
+        if (current == null) {
+            for (int i = 0; i < n; i++) {
+                result[i] = calculateHeuristicReturn(data.depositRate(i));
+            }
+            return result;
+        }
+
+        int from = 0;
+        try {
+            long start = System.nanoTime();
+            int batchSize = this.batchSize;
+            FeaturePipeline.Batch batch = new FeaturePipeline().transform(data);
+            for (; from < n; from += batchSize) {
+                int to = Math.min(n, from + batchSize);
+                double[] slice = batch.featureSlice(from, to);
+                // Признаки строятся без блокировки, под ней только нормализация и проход по сети
+                synchronized (NATIVE_LOCK) {
+                    INDArray features = Nd4j.create(slice, new long[]{to - from, FEATURE_COUNT}, 'f');
+                    current.normalizer.transform(features);
+                    INDArray output = current.model.output(features);
+                    System.arraycopy(output.reshape(to - from).toDoubleVector(), 0, result, from, to - from);
+                }
+            }
+            recordInference("batch", start, n);
+        } catch (Exception e) {
+            log.warn("Ошибка пакетного предсказания, для {} строк используется эвристика: {}",
+                    n - from, e.getMessage());
+            for (int i = from; i < n; i++) {
+                result[i] = calculateHeuristicReturn(data.depositRate(i));
+            }
+        }
+        return result;
+    }
+
+    private static void recordInference(String path, long startNanos, int rows) {
+        METRICS.timer("predictor_inference_seconds", "Длительность прогноза", "path", path).recordSince(startNanos);
+        METRICS.counter("predictor_rows_predicted_total", "Строк, спрогнозированных сетью", "path", path).add(rows);
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize должен быть >= 1");
+        }
+        this.batchSize = batchSize;
+    }
+
     private double calculateHeuristicReturn(BankData data) {
+        return calculateHeuristicReturn(data.getDepositRate());
+    }
+
+    private double calculateHeuristicReturn(double depositRate) {
         // Простая эвристика: средняя доходность + премия за стабильность
-        double baseReturn = data.getDepositRate() * 1.3;
-        Random random = new Random();
-        return baseReturn + (random.nextDouble() * 2 - 1); // ±1% случайность
+        double baseReturn = depositRate * 1.3;
+        return baseReturn + ThreadLocalRandom.current().nextDouble(-1.0, 1.0); // ±1% случайность
     }
 
-    private INDArray prepareFeatures(List<BankData> data) {
-        double[][] featuresArray = new double[data.size()][4];
+    /**
+     * Отпечаток данных не зависит от порядка строк: хэши строк складываются.
+     */
+    static long fingerprint(RateTable data) {
+        long sum = data.size();
         for (int i = 0; i < data.size(); i++) {
-            BankData bankData = data.get(i);
-            featuresArray[i][0] = bankData.getDepositRate();
-            featuresArray[i][1] = bankData.getLoanRate();
-            featuresArray[i][2] = bankData.getInvestmentReturn();
-            featuresArray[i][3] = bankData.getTermDays() / 365.0;
+            long h = data.bankName(i).hashCode();
+            h = h * 31 + data.epochDay(i);
+            h = h * 31 + data.termDays(i);
+            h = h * 31 + Double.doubleToLongBits(data.depositRate(i));
+            h = h * 31 + Double.doubleToLongBits(data.loanRate(i));
+            h = h * 31 + Double.doubleToLongBits(data.investmentReturn(i));
+            sum += mix64(h);
         }
-        return Nd4j.create(featuresArray);
+        return sum;
     }
 
-    private INDArray prepareLabels(List<BankData> data) {
-        double[] labelsArray = new double[data.size()];
-        for (int i = 0; i < data.size(); i++) {
-            labelsArray[i] = data.get(i).getInvestmentReturn();
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private void restoreModel() {
+        if (!modelFile.exists()) {
+            return;
+        }
+        try {
+            MultiLayerNetwork model;
+            NormalizerStandardize normalizer;
+            synchronized (NATIVE_LOCK) {
+                model = ModelSerializer.restoreMultiLayerNetwork(modelFile, true);
+                normalizer = ModelSerializer.restoreNormalizerFromFile(modelFile);
+            }
+            ModelMetadata metadata = ModelSerializer.getObjectFromFile(modelFile, METADATA_KEY);
+            ReplayBuffer replay = ModelSerializer.getObjectFromFile(modelFile, REPLAY_KEY);
+            FeaturePipeline pipeline = ModelSerializer.getObjectFromFile(modelFile, PIPELINE_KEY);
+            if (normalizer != null) {
+                state.set(new ModelState(model, normalizer, metadata, replay, pipeline));
+            }
+            log.info("Загружена сохранённая модель: {}", modelFile);
+        } catch (Exception e) {
+            // Модель без метаданных или повреждённый архив: будет переобучена
+            log.warn("Не удалось загрузить модель {}: {}", modelFile, e.getMessage());
+            state.set(null);
         }
-        return Nd4j.create(labelsArray, new int[]{data.size(), 1});
     }
 
-    private void saveModel() {
+    // Вызывается под trainLock
+    private void saveModel(ModelState saved) {
         try {
-            new File("models").mkdirs();
-            ModelSerializer.writeModel(model, new File(MODEL_PATH), true);
+            File dir = modelFile.getAbsoluteFile().getParentFile();
+            dir.mkdirs();
+            // Пишем во временный файл, чтобы прерванная запись не испортила рабочую модель
+            File tmp = new File(dir, modelFile.getName() + ".tmp");
+            // writeModel(..., normalizer) в 1.0.0-M2 падает на закрытом потоке, добавляем отдельно
+            synchronized (NATIVE_LOCK) {
+                ModelSerializer.writeModel(saved.model, tmp, true);
+                ModelSerializer.addNormalizerToModel(tmp, saved.normalizer);
+            }
+            ModelSerializer.addObjectToFile(tmp, METADATA_KEY, saved.metadata);
+            ModelSerializer.addObjectToFile(tmp, REPLAY_KEY, saved.replay);
+            ModelSerializer.addObjectToFile(tmp, PIPELINE_KEY, saved.pipeline);
+            Files.move(tmp.toPath(), modelFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
-            System.err.println("Ошибка сохранения модели: " + e.getMessage());
+            log.error("Ошибка сохранения модели {}: {}", modelFile, e.getMessage());
         }
     }
 
     public boolean isModelTrained() {
-        return isTrained;
+        return state.get() != null;
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.RateTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок: таблица ставок и прогнозы модели для каждой её строки.
+ * Строится один раз при обновлении данных, после чего запросы рекомендаций
+ * обслуживаются из памяти без обращения к диску, сети и модели.
+ * Переданная таблица не должна меняться после создания снимка.
+ */
+public final class RateSnapshot {
+    private final long version;
+    private final long createdAtMillis;
+    private final RateTable rates;
+    private final double[] predictedReturns;
+    private final List<BankData> latestRates;
+    // Последнее наблюдение каждого продукта (банк, срок) с прогнозом в investmentReturn
+    private final List<BankData> latestProducts;
+
+    public RateSnapshot(long version, RateTable rates, double[] predictedReturns) {
+        if (predictedReturns.length != rates.size()) {
+            throw new IllegalArgumentException("Прогнозов " + predictedReturns.length
+                    + ", а строк в таблице " + rates.size());
+        }
+        this.version = version;
+        this.createdAtMillis = System.currentTimeMillis();
+        this.rates = rates;
+        this.predictedReturns = predictedReturns;
+        this.latestRates = Collections.unmodifiableList(latestPerBank(rates));
+        this.latestProducts = Collections.unmodifiableList(latestPerProduct(rates, predictedReturns));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public int size() {
+        return rates.size();
+    }
+
+    /**
+     * Последнее наблюдение каждого банка.
+     */
+    public List<BankData> getLatestRates() {
+        return latestRates;
+    }
+
+    /**
+     * Кандидаты для распределения суммы: считаются один раз на снимок, а не на каждый запрос.
+     */
+    List<BankData> latestProducts() {
+        return latestProducts;
+    }
+
+    RateTable rates() {
+        return rates;
+    }
+
+    double predictedReturn(int row) {
+        return predictedReturns[row];
+    }
+
+    private static List<BankData> latestPerBank(RateTable rates) {
+        int[] rows = rates.latestRowPerBank();
+        List<BankData> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(rates.get(row));
+        }
+        return result;
+    }
+
+    private static List<BankData> latestPerProduct(RateTable rates, double[] predictedReturns) {
+        int[] rows = rates.latestRowPerProduct();
+        List<BankData> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(new BankData(rates.bankName(row), rates.depositRate(row), rates.loanRate(row),
+                    predictedReturns[row], rates.date(row), rates.termDays(row)));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,116 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.BankData;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Готовые рекомендации по ключу (версия снимка, срок). Прогноз не зависит от суммы,
+ * поэтому прибыль по сумме считает вызывающий поверх закэшированного списка.
+ * Вытеснение по LRU; при появлении более новой версии снимка все записи старых
+ * версий удаляются, так что после публикации нового снимка или модели кэш начинается заново.
+ *
+ * Возвращаемые списки неизменяемы и общие для всех вызывающих: объекты BankData в них менять нельзя.
+ */
+public class RecommendationCache {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private final Map<Key, List<BankData>> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long currentVersion = Long.MIN_VALUE;
+
+    private static final class Key {
+        private final long version;
+        private final int term;
+
+        Key(long version, int term) {
+            this.version = version;
+            this.term = term;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return version == other.version && term == other.term;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(version) * 31 + term;
+        }
+    }
+
+    public RecommendationCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RecommendationCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ёмкость кэша должна быть положительной");
+        }
+        this.entries = new LinkedHashMap<Key, List<BankData>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<BankData>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Список из кэша или посчитанный loader. Loader выполняется вне блокировки:
+     * два одновременных промаха по одному ключу посчитают список дважды, но результат одинаков.
+     */
+    public List<BankData> get(long version, int term, Supplier<List<BankData>> loader) {
+        Key key = new Key(version, term);
+        synchronized (this) {
+            List<BankData> cached = entries.get(key);
+            if (cached != null) {
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        List<BankData> computed = List.copyOf(loader.get());
+        synchronized (this) {
+            if (version > currentVersion) {
+                entries.clear();
+                currentVersion = version;
+            }
+            // Запрос, начатый на прошлом снимке, кэш новой версии не засоряет
+            if (version == currentVersion) {
+                entries.put(key, computed);
+            }
+        }
+        return computed;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
@@ -0,0 +1,89 @@
+package bankanalyzer.ml;
+
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Ограниченная выборка исторических примеров (reservoir sampling) для дообучения:
+ * новые наблюдения смешиваются с ней, чтобы сеть не забывала историю.
+ * Хранит признаки до нормализации и сохраняется в архиве модели.
+ */
+class ReplayBuffer implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int featureCount;
+    private final double[][] features;
+    private final double[] labels;
+    private int size;
+    private long seen;
+    private final Random random = new Random(12345);
+
+    ReplayBuffer(int capacity, int featureCount) {
+        this.featureCount = featureCount;
+        this.features = new double[capacity][];
+        this.labels = new double[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int featureCount() {
+        return featureCount;
+    }
+
+    /**
+     * Предлагает в выборку n примеров из буфера признаков в порядке 'f'
+     * (признак j строки i лежит в columnMajor[j * n + i]).
+     */
+    void offer(double[] columnMajor, double[] rowLabels, int n) {
+        for (int i = 0; i < n; i++) {
+            int slot;
+            if (size < features.length) {
+                slot = size++;
+            } else {
+                long r = (long) (random.nextDouble() * (seen + 1));
+                if (r >= features.length) {
+                    seen++;
+                    continue;
+                }
+                slot = (int) r;
+            }
+            double[] row = new double[featureCount];
+            for (int j = 0; j < featureCount; j++) {
+                row[j] = columnMajor[j * n + i];
+            }
+            features[slot] = row;
+            labels[slot] = rowLabels[i];
+            seen++;
+        }
+    }
+
+    /**
+     * Случайная выборка без повторов из накопленных примеров.
+     */
+    DataSet sample(int count) {
+        int n = Math.min(count, size);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(size - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        double[][] sampleFeatures = new double[n][];
+        double[][] sampleLabels = new double[n][1];
+        for (int i = 0; i < n; i++) {
+            sampleFeatures[i] = features[order[i]];
+            sampleLabels[i][0] = labels[order[i]];
+        }
+        return new DataSet(Nd4j.create(sampleFeatures), Nd4j.create(sampleLabels));
+    }
+}
@@ -0,0 +1,60 @@
+package bankanalyzer.ml;
+
+import java.io.Serializable;
+
+/**
+ * Скользящее окно фиксированной длины с суммой и суммой квадратов:
+ * добавление значения, среднее и стандартное отклонение — за O(1).
+ */
+class RollingWindow implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] values;
+    private int count;
+    private int next;
+    private double sum;
+    private double sumOfSquares;
+
+    RollingWindow(int capacity) {
+        this.values = new double[capacity];
+    }
+
+    private RollingWindow(RollingWindow other) {
+        this.values = other.values.clone();
+        this.count = other.count;
+        this.next = other.next;
+        this.sum = other.sum;
+        this.sumOfSquares = other.sumOfSquares;
+    }
+
+    void add(double value) {
+        if (count == values.length) {
+            double evicted = values[next];
+            sum -= evicted;
+            sumOfSquares -= evicted * evicted;
+        } else {
+            count++;
+        }
+        values[next] = value;
+        next = (next + 1) % values.length;
+        sum += value;
+        sumOfSquares += value * value;
+    }
+
+    double mean() {
+        return count == 0 ? 0.0 : sum / count;
+    }
+
+    double std() {
+        if (count < 2) {
+            return 0.0;
+        }
+        double mean = sum / count;
+        // Погрешность вычитания может дать слегка отрицательную дисперсию
+        return Math.sqrt(Math.max(0.0, sumOfSquares / count - mean * mean));
+    }
+
+    RollingWindow copy() {
+        return new RollingWindow(this);
+    }
+}
@@ -0,0 +1,320 @@
+package bankanalyzer.service;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.metrics.Metrics;
+import bankanalyzer.ml.InvestmentRecommender;
+import bankanalyzer.ml.PortfolioAllocation;
+import bankanalyzer.ml.PortfolioAllocator;
+import bankanalyzer.ml.RateSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Встроенный HTTP/JSON API поверх текущего {@link RateSnapshot}:
+ * <pre>
+ *   GET /recommendations?amount=100000&amp;term=365
+ *   GET /portfolio?amount=3000000&amp;term=365&amp;minBanks=3
+ *   GET /rates
+ *   GET /metrics  — метрики процесса в текстовом формате Prometheus
+ * </pre>
+ * Каждый запрос берёт снимок один раз и дальше работает только с ним, поэтому
+ * публикация нового снимка не блокирует запросы и не смешивает данные двух версий.
+ * Для коротких ответов стоит запускать JVM с {@code -Dsun.net.httpserver.nodelay=true}
+ * (так делает {@code Main --daemon}): иначе задержанное подтверждение TCP добавляет к запросу ~40 мс.
+ */
+@Slf4j
+public class ApiServer implements AutoCloseable {
+    private static final int MAX_TERM_DAYS = 3650;
+    private static final int MAX_MIN_BANKS = 100;
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private final Supplier<RateSnapshot> snapshots;
+    private final InvestmentRecommender recommender;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    // Ответ /rates зависит только от снимка: сериализуем его один раз на версию
+    private final AtomicReference<CachedBody> ratesBody = new AtomicReference<>();
+
+    private static final class CachedBody {
+        private final long version;
+        private final byte[] body;
+
+        CachedBody(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+
+    private static final class BadRequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+
+    public ApiServer(int port, Supplier<RateSnapshot> snapshots, InvestmentRecommender recommender)
+            throws IOException {
+        this.snapshots = snapshots;
+        this.recommender = recommender;
+        this.server = HttpServer.create(new InetSocketAddress(port), 256);
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, runnable -> {
+            Thread thread = new Thread(runnable, "api-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/recommendations", handler(this::recommendations));
+        server.createContext("/portfolio", handler(this::portfolio));
+        server.createContext("/rates", handler(this::rates));
+        server.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        server.start();
+        log.info("API запущен: http://localhost:{}/recommendations?amount=&term=", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private interface Endpoint {
+        byte[] handle(HttpExchange exchange, RateSnapshot snapshot) throws Exception;
+    }
+
+    private HttpHandler handler(Endpoint endpoint) {
+        return exchange -> {
+            long start = System.nanoTime();
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().add("Allow", "GET");
+                    sendError(exchange, 405, "Поддерживается только GET");
+                    return;
+                }
+                RateSnapshot snapshot = snapshots.get();
+                if (snapshot == null) {
+                    sendError(exchange, 503, "Данные ещё не загружены");
+                    return;
+                }
+                send(exchange, 200, endpoint.handle(exchange, snapshot));
+            } catch (BadRequestException e) {
+                sendError(exchange, 400, e.getMessage());
+            } catch (Exception e) {
+                log.error("Ошибка обработки {}", exchange.getRequestURI(), e);
+                sendError(exchange, 500, "Внутренняя ошибка");
+            } finally {
+                exchange.close();
+                Metrics.global().timer("api_request_seconds", "Время обработки запроса API",
+                        "endpoint", exchange.getHttpContext().getPath()).recordSince(start);
+            }
+        };
+    }
+
+    // Метрики не зависят от снимка и доступны, даже пока данные не загружены
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = Metrics.global().toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] recommendations(HttpExchange exchange, RateSnapshot snapshot) throws Exception {
+        Map<String, String> params = queryParams(exchange);
+        double amount = parseAmount(params.get("amount"));
+        int term = parseTerm(params.get("term"));
+
+        List<BankData> recommendations = recommender.getInvestmentRecommendations(snapshot, term);
+        List<Map<String, Object>> items = new ArrayList<>(recommendations.size());
+        for (BankData bank : recommendations) {
+            double profit = amount * bank.getInvestmentReturn() / 100;
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("bankName", bank.getBankName());
+            item.put("predictedReturn", bank.getInvestmentReturn());
+            item.put("expectedProfit", profit);
+            item.put("expectedTotal", amount + profit);
+            item.put("depositRate", bank.getDepositRate());
+            item.put("loanRate", bank.getLoanRate());
+            item.put("date", bank.getDate());
+            item.put("termDays", bank.getTermDays());
+            items.add(item);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("snapshotVersion", snapshot.getVersion());
+        body.put("amount", amount);
+        body.put("term", term);
+        body.put("recommendations", items);
+        return mapper.writeValueAsBytes(body);
+    }
+
+    private byte[] portfolio(HttpExchange exchange, RateSnapshot snapshot) throws Exception {
+        Map<String, String> params = queryParams(exchange);
+        double amount = parseAmount(params.get("amount"));
+        int term = parseTerm(params.get("term"));
+        int minBanks = parseMinBanks(params.get("minBanks"));
+
+        PortfolioAllocator allocator = new PortfolioAllocator(PortfolioAllocator.DEFAULT_INSURANCE_CAP, minBanks,
+                PortfolioAllocator.DEFAULT_TERM_TOLERANCE);
+        PortfolioAllocation allocation = recommender.allocatePortfolio(snapshot, amount, term, allocator);
+        List<Map<String, Object>> items = new ArrayList<>(allocation.getPositions().size());
+        for (PortfolioAllocation.Position position : allocation.getPositions()) {
+            BankData product = position.getProduct();
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("bankName", product.getBankName());
+            item.put("amount", position.getAmount());
+            item.put("predictedReturn", product.getInvestmentReturn());
+            item.put("expectedProfit", position.getExpectedProfit());
+            item.put("termDays", product.getTermDays());
+            item.put("termMatched", position.isTermMatched());
+            items.add(item);
+        }
+
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("snapshotVersion", snapshot.getVersion());
+        body.put("amount", amount);
+        body.put("term", term);
+        body.put("minBanks", minBanks);
+        body.put("insuranceCap", allocator.getInsuranceCap());
+        body.put("expectedReturn", allocation.getExpectedReturn());
+        body.put("expectedProfit", allocation.getExpectedProfit());
+        body.put("unallocated", allocation.getUnallocated());
+        body.put("minBanksSatisfied", allocation.isMinBanksSatisfied());
+        body.put("solveMillis", allocation.getSolveNanos() / 1e6);
+        body.put("positions", items);
+        return mapper.writeValueAsBytes(body);
+    }
+
+    private byte[] rates(HttpExchange exchange, RateSnapshot snapshot) throws JsonProcessingException {
+        CachedBody cached = ratesBody.get();
+        if (cached != null && cached.version == snapshot.getVersion()) {
+            return cached.body;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("snapshotVersion", snapshot.getVersion());
+        body.put("createdAt", Instant.ofEpochMilli(snapshot.getCreatedAtMillis()));
+        body.put("rates", snapshot.getLatestRates());
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        ratesBody.set(new CachedBody(snapshot.getVersion(), bytes));
+        return bytes;
+    }
+
+    private static double parseAmount(String value) throws BadRequestException {
+        if (value == null) {
+            throw new BadRequestException("Не указан параметр amount");
+        }
+        try {
+            double amount = Double.parseDouble(value);
+            if (!(amount > 0) || Double.isInfinite(amount)) {
+                throw new BadRequestException("amount должен быть положительным числом");
+            }
+            return amount;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("amount должен быть числом: " + value);
+        }
+    }
+
+    private static int parseTerm(String value) throws BadRequestException {
+        if (value == null) {
+            throw new BadRequestException("Не указан параметр term");
+        }
+        try {
+            int term = Integer.parseInt(value);
+            if (term < 1 || term > MAX_TERM_DAYS) {
+                throw new BadRequestException("term должен быть от 1 до " + MAX_TERM_DAYS + " дней");
+            }
+            return term;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("term должен быть целым числом дней: " + value);
+        }
+    }
+
+    private static int parseMinBanks(String value) throws BadRequestException {
+        if (value == null) {
+            return PortfolioAllocator.DEFAULT_MIN_BANKS;
+        }
+        try {
+            int minBanks = Integer.parseInt(value);
+            if (minBanks < 1 || minBanks > MAX_MIN_BANKS) {
+                throw new BadRequestException("minBanks должен быть от 1 до " + MAX_MIN_BANKS);
+            }
+            return minBanks;
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("minBanks должен быть целым числом: " + value);
+        }
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) throws BadRequestException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            try {
+                params.putIfAbsent(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                throw new BadRequestException("Некорректная строка запроса");
+            }
+        }
+        return params;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("error", message);
+        send(exchange, status, mapper.writeValueAsBytes(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package bankanalyzer.service;
+
+import bankanalyzer.data.BankData;
+import bankanalyzer.data.DataStorage;
+import bankanalyzer.data.RateTable;
+import bankanalyzer.ml.InvestmentRecommender;
+import bankanalyzer.ml.RateSnapshot;
+import bankanalyzer.web.WebScraper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Фоновое обновление данных: по расписанию собирает ставки, дописывает журнал,
+ * переобучает модель при необходимости и публикует новый {@link RateSnapshot}.
+ * Запросы читают текущий снимок из {@link AtomicReference} и никогда не ждут обновления.
+ *
+ * Интервал между обновлениями случайно сдвигается на ±jitter от заданного,
+ * чтобы несколько экземпляров не обращались к сайтам банков одновременно.
+ */
+@Slf4j
+public class RefreshDaemon implements AutoCloseable {
+    public static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(60);
+    public static final double DEFAULT_JITTER = 0.1;
+
+    private final WebScraper scraper;
+    private final DataStorage storage;
+    private final InvestmentRecommender recommender;
+    private final Duration interval;
+    private final double jitter;
+    private final AtomicReference<RateSnapshot> snapshot = new AtomicReference<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rate-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long nextVersion = 1;
+
+    public RefreshDaemon(WebScraper scraper, DataStorage storage, InvestmentRecommender recommender,
+                         Duration interval, double jitter) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("Интервал обновления должен быть положительным");
+        }
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("jitter должен быть в диапазоне [0, 1)");
+        }
+        this.scraper = scraper;
+        this.storage = storage;
+        this.recommender = recommender;
+        this.interval = interval;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Строит первый снимок в текущем потоке и запускает расписание.
+     * Если сбор не удался, снимок строится по истории из журнала.
+     */
+    public void start() {
+        refreshOrKeep();
+        if (snapshot.get() == null) {
+            publish(storage.currentData());
+        }
+        scheduleNext();
+    }
+
+    /**
+     * Текущий снимок; null только до завершения {@link #start()}.
+     */
+    public RateSnapshot current() {
+        return snapshot.get();
+    }
+
+    /**
+     * Внеочередное обновление в вызывающем потоке.
+     */
+    public synchronized RateSnapshot refresh() {
+        List<BankData> scraped = scraper.scrapeBankRates();
+        storage.saveData(scraped);
+        return publish(storage.currentData());
+    }
+
+    private synchronized RateSnapshot publish(List<BankData> data) {
+        long start = System.nanoTime();
+        RateSnapshot next = recommender.createSnapshot(RateTable.of(data), nextVersion++);
+        snapshot.set(next);
+        log.info("Снимок #{} опубликован: {} записей, {} мс",
+                next.getVersion(), next.size(), (System.nanoTime() - start) / 1_000_000);
+        return next;
+    }
+
+    private void refreshOrKeep() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // Прежний снимок остаётся в работе до следующей попытки
+            log.error("Ошибка фонового обновления", e);
+        }
+    }
+
+    private void scheduleNext() {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        long base = interval.toMillis();
+        long spread = (long) (base * jitter);
+        long delay = base + (spread > 0 ? ThreadLocalRandom.current().nextLong(-spread, spread + 1) : 0);
+        try {
+            scheduler.schedule(() -> {
+                refreshOrKeep();
+                scheduleNext();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Демон остановлен
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
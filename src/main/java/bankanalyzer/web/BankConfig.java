@@ -0,0 +1,50 @@
+package bankanalyzer.web;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Описание банка в banks.json. Необязательные поля, оставленные пустыми,
+ * заменяются значениями по умолчанию из {@link RateExtractor}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class BankConfig {
+    private String id;
+    private String name;
+    private String url;
+    private int termDays = 365;
+
+    // CSS-селекторы элементов со ставками; без них ставки ищутся по ключевым словам
+    private String depositSelector;
+    private String loanSelector;
+    private List<String> depositKeywords;
+    private List<String> loanKeywords;
+    private Double minRate;
+    private Double maxRate;
+
+    private Fallback fallback;
+
+    /**
+     * Диапазоны [min, max] для подстановочных данных, если страница недоступна.
+     */
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class Fallback {
+        private double[] depositRate = {6.0, 8.0};
+        private double[] loanRate = {12.0, 15.0};
+        private double[] investmentReturn = {9.0, 11.5};
+    }
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    public static class File {
+        private List<BankConfig> banks;
+    }
+}
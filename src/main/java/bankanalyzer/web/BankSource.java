@@ -0,0 +1,46 @@
+package bankanalyzer.web;
+
+import bankanalyzer.data.BankData;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.StreamParser;
+
+/**
+ * Источник ставок одного банка: адрес страницы и способ извлечь из неё ставки.
+ * Обычно источники описываются декларативно в banks.json ({@link ConfiguredBankSource});
+ * реализации с собственной логикой подключаются через {@link java.util.ServiceLoader}
+ * (META-INF/services/bankanalyzer.web.BankSource) и заменяют описания с тем же id.
+ *
+ * Реализации должны быть потокобезопасны: страницы разных банков разбираются параллельно.
+ */
+public interface BankSource {
+    /**
+     * Короткий латинский идентификатор, например "sberbank".
+     */
+    String getId();
+
+    String getBankName();
+
+    String getUrl();
+
+    default int getTermDays() {
+        return 365;
+    }
+
+    /**
+     * Отпечаток правил извлечения. Ставки из кэша страниц, сохранённые при других
+     * правилах, не используются. Реализации с настраиваемыми правилами должны
+     * включать их в отпечаток.
+     */
+    default String getConfigHash() {
+        return getClass().getName();
+    }
+
+    RateExtractor.Rates extract(Document doc);
+
+    RateExtractor.Rates extract(StreamParser parser);
+
+    /**
+     * Правдоподобные данные на случай, если страницу не удалось загрузить или разобрать.
+     */
+    BankData createFallbackData();
+}
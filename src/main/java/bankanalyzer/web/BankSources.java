@@ -0,0 +1,72 @@
+package bankanalyzer.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Загрузка списка источников: описания из banks.json (из classpath или из файла,
+ * указанного в -Dbankanalyzer.banks) плюс реализации {@link BankSource},
+ * зарегистрированные через {@link ServiceLoader}.
+ */
+@Slf4j
+public final class BankSources {
+    public static final String CONFIG_PROPERTY = "bankanalyzer.banks";
+    private static final String DEFAULT_RESOURCE = "/banks.json";
+
+    private BankSources() {
+    }
+
+    public static List<BankSource> load() {
+        Map<String, BankSource> sources = new LinkedHashMap<>();
+
+        String configPath = System.getProperty(CONFIG_PROPERTY);
+        try (InputStream in = configPath != null
+                ? Files.newInputStream(Paths.get(configPath))
+                : BankSources.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                log.error("Конфигурация банков не найдена: {}", DEFAULT_RESOURCE);
+            } else {
+                for (BankSource source : fromConfig(in)) {
+                    sources.put(source.getId(), source);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Ошибка чтения конфигурации банков: {}", e.getMessage());
+        }
+
+        // Источники с собственной логикой заменяют описания с тем же id
+        for (BankSource source : ServiceLoader.load(BankSource.class)) {
+            sources.put(source.getId(), source);
+        }
+        return new ArrayList<>(sources.values());
+    }
+
+    /**
+     * Разбирает конфигурацию; некорректные описания пропускаются с сообщением об ошибке.
+     */
+    public static List<BankSource> fromConfig(InputStream in) throws IOException {
+        BankConfig.File file = new ObjectMapper().readValue(in, BankConfig.File.class);
+        List<BankSource> sources = new ArrayList<>();
+        if (file.getBanks() == null) {
+            return sources;
+        }
+        for (BankConfig config : file.getBanks()) {
+            try {
+                sources.add(new ConfiguredBankSource(config));
+            } catch (IllegalArgumentException e) {
+                log.warn("Пропущено описание банка {}: {}", config.getId(), e.getMessage());
+            }
+        }
+        return sources;
+    }
+}
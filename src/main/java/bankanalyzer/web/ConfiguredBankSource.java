@@ -0,0 +1,142 @@
+package bankanalyzer.web;
+
+import bankanalyzer.data.BankData;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Источник, построенный по описанию из banks.json. Селекторы компилируются
+ * в {@link Evaluator} один раз при загрузке конфигурации.
+ */
+public class ConfiguredBankSource implements BankSource {
+    private final String id;
+    private final String bankName;
+    private final String url;
+    private final int termDays;
+    private final RateExtractor extractor;
+    private final BankConfig.Fallback fallback;
+    private final String configHash;
+
+    /**
+     * @throws IllegalArgumentException если описание неполное или селектор некорректен
+     */
+    public ConfiguredBankSource(BankConfig config) {
+        if (isBlank(config.getId()) || isBlank(config.getUrl())) {
+            throw new IllegalArgumentException("У банка должны быть заданы id и url");
+        }
+        this.id = config.getId();
+        this.bankName = isBlank(config.getName()) ? config.getId() : config.getName();
+        this.url = config.getUrl();
+        this.termDays = config.getTermDays();
+        this.fallback = config.getFallback() != null ? config.getFallback() : new BankConfig.Fallback();
+        checkRange("fallback.depositRate", fallback.getDepositRate());
+        checkRange("fallback.loanRate", fallback.getLoanRate());
+        checkRange("fallback.investmentReturn", fallback.getInvestmentReturn());
+        this.extractor = buildExtractor(config);
+        this.configHash = configHash(config);
+    }
+
+    // Только то, что влияет на извлечение ставок: правка резервных диапазонов кэш не сбрасывает
+    private static String configHash(BankConfig config) {
+        String rules = String.join("\n",
+                String.valueOf(config.getDepositSelector()),
+                String.valueOf(config.getLoanSelector()),
+                String.valueOf(config.getDepositKeywords()),
+                String.valueOf(config.getLoanKeywords()),
+                String.valueOf(config.getMinRate()),
+                String.valueOf(config.getMaxRate()));
+        return PageCache.hash(rules.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static RateExtractor buildExtractor(BankConfig config) {
+        boolean customized = config.getDepositSelector() != null || config.getLoanSelector() != null
+                || config.getDepositKeywords() != null || config.getLoanKeywords() != null
+                || config.getMinRate() != null || config.getMaxRate() != null;
+        if (!customized) {
+            return RateExtractor.DEFAULT;
+        }
+        return new RateExtractor(
+                config.getDepositKeywords() != null ? config.getDepositKeywords() : RateExtractor.DEFAULT_DEPOSIT_KEYWORDS,
+                config.getLoanKeywords() != null ? config.getLoanKeywords() : RateExtractor.DEFAULT_LOAN_KEYWORDS,
+                config.getMinRate() != null ? config.getMinRate() : RateExtractor.DEFAULT_MIN_RATE,
+                config.getMaxRate() != null ? config.getMaxRate() : RateExtractor.DEFAULT_MAX_RATE,
+                compile(config.getDepositSelector()),
+                compile(config.getLoanSelector()));
+    }
+
+    private static Evaluator compile(String selector) {
+        if (isBlank(selector)) {
+            return null;
+        }
+        try {
+            return QueryParser.parse(selector);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Некорректный селектор '" + selector + "': " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getBankName() {
+        return bankName;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public int getTermDays() {
+        return termDays;
+    }
+
+    @Override
+    public String getConfigHash() {
+        return configHash;
+    }
+
+    @Override
+    public RateExtractor.Rates extract(Document doc) {
+        return extractor.extract(doc);
+    }
+
+    @Override
+    public RateExtractor.Rates extract(StreamParser parser) {
+        return extractor.extract(parser);
+    }
+
+    @Override
+    public BankData createFallbackData() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new BankData(bankName,
+                between(random, fallback.getDepositRate()),
+                between(random, fallback.getLoanRate()),
+                between(random, fallback.getInvestmentReturn()),
+                LocalDate.now(), termDays);
+    }
+
+    private static double between(ThreadLocalRandom random, double[] range) {
+        return range[0] + random.nextDouble() * (range[1] - range[0]);
+    }
+
+    private void checkRange(String field, double[] range) {
+        if (range == null || range.length != 2 || range[0] > range[1]) {
+            throw new IllegalArgumentException(id + ": " + field + " должен быть диапазоном [min, max]");
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package bankanalyzer.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Транспорт, через который скрапер загружает страницы. Реализация держит пул
+ * соединений и собственные настройки TLS, не затрагивая остальную JVM.
+ */
+public interface HttpTransport extends Closeable {
+
+    /**
+     * GET-запрос. Тело ответа уже распаковано и ограничено maxBodyBytes:
+     * после бюджета поток просто заканчивается. Ответ нужно закрыть;
+     * закрытие до конца тела прекращает чтение из сети.
+     */
+    Response get(String url, Map<String, String> headers, int timeoutMillis, int maxBodyBytes) throws IOException;
+
+    @Override
+    default void close() {
+    }
+
+    final class Response implements Closeable {
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        public Response(int statusCode, Map<String, List<String>> headers, InputStream body) {
+            this.statusCode = statusCode;
+            this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            this.headers.putAll(headers);
+            this.body = body;
+        }
+
+        public int statusCode() {
+            return statusCode;
+        }
+
+        public String header(String name) {
+            List<String> values = headers.get(name);
+            return values == null || values.isEmpty() ? null : values.get(0);
+        }
+
+        /**
+         * Кодировка из Content-Type или null, если сервер её не указал или она неизвестна JVM.
+         */
+        public String charset() {
+            String contentType = header("Content-Type");
+            if (contentType == null) {
+                return null;
+            }
+            for (String part : contentType.split(";")) {
+                String param = part.trim();
+                if (param.regionMatches(true, 0, "charset=", 0, 8)) {
+                    String charset = param.substring(8).replace("\"", "").trim();
+                    try {
+                        return Charset.isSupported(charset) ? charset : null;
+                    } catch (IllegalCharsetNameException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+
+        public InputStream body() {
+            return body;
+        }
+
+        public byte[] bodyAsBytes() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[16384];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
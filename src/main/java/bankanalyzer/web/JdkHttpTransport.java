@@ -0,0 +1,247 @@
+package bankanalyzer.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.brotli.dec.BrotliInputStream;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedTrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Транспорт на {@link HttpClient} из JDK: HTTP/2 с откатом на HTTP/1.1, соединения
+ * к одному хосту переиспользуются между запросами, ответы в gzip, deflate и br
+ * распаковываются на лету.
+ *
+ * TLS настраивается только для этого клиента. Сертификаты и имя хоста проверяются
+ * по хранилищу JVM, дополненному корневыми сертификатами из ресурса tls/extra-ca.pem
+ * (часть банков использует Russian Trusted Root CA, которого нет в JDK) и из файла
+ * -Dbankanalyzer.tls.caFile. -Dbankanalyzer.tls.trustAll=true отключает проверку.
+ */
+@Slf4j
+public class JdkHttpTransport implements HttpTransport {
+    public static final String TRUST_ALL_PROPERTY = "bankanalyzer.tls.trustAll";
+    public static final String CA_FILE_PROPERTY = "bankanalyzer.tls.caFile";
+    private static final String BUNDLED_CA_RESOURCE = "/tls/extra-ca.pem";
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    private final HttpClient client;
+
+    public JdkHttpTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, !Boolean.getBoolean(TRUST_ALL_PROPERTY));
+    }
+
+    public JdkHttpTransport(Duration connectTimeout, boolean verifyCertificates) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .sslContext(verifyCertificates ? verifyingContext() : trustAllContext())
+                .build();
+    }
+
+    @Override
+    public Response get(String url, Map<String, String> headers, int timeoutMillis, int maxBodyBytes)
+            throws IOException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("User-Agent", USER_AGENT)
+                .header("Accept-Encoding", "gzip, deflate, br")
+                .GET();
+        headers.forEach(request::header);
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Запрос прерван: " + url);
+        }
+
+        InputStream body = response.body();
+        try {
+            body = decode(body, response.headers().firstValue("Content-Encoding").orElse("identity"));
+        } catch (IOException e) {
+            body.close();
+            throw e;
+        }
+        return new Response(response.statusCode(), response.headers().map(), new BudgetInputStream(body, maxBodyBytes));
+    }
+
+    private static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        switch (contentEncoding.trim().toLowerCase()) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(body, 16384);
+            case "deflate":
+                return new InflaterInputStream(body);
+            case "br":
+                return new BrotliInputStream(body);
+            case "identity":
+            case "":
+                return body;
+            default:
+                throw new IOException("Неподдерживаемый Content-Encoding: " + contentEncoding);
+        }
+    }
+
+    /**
+     * Обычная проверка цепочки и имени хоста; к корневым сертификатам JVM добавляются
+     * сертификаты из ресурса и из файла, заданного свойством.
+     */
+    private static SSLContext verifyingContext() {
+        try {
+            List<X509Certificate> extra = new ArrayList<>();
+            try (InputStream in = JdkHttpTransport.class.getResourceAsStream(BUNDLED_CA_RESOURCE)) {
+                if (in != null) {
+                    extra.addAll(readCertificates(in));
+                }
+            }
+            String caFile = System.getProperty(CA_FILE_PROPERTY);
+            if (caFile != null) {
+                try (InputStream in = Files.newInputStream(Paths.get(caFile))) {
+                    extra.addAll(readCertificates(in));
+                }
+            }
+            if (extra.isEmpty()) {
+                return SSLContext.getDefault();
+            }
+
+            KeyStore trusted = KeyStore.getInstance(KeyStore.getDefaultType());
+            trusted.load(null, null);
+            int alias = 0;
+            TrustManagerFactory jvm = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            jvm.init((KeyStore) null);
+            for (TrustManager manager : jvm.getTrustManagers()) {
+                if (manager instanceof X509TrustManager) {
+                    for (X509Certificate certificate : ((X509TrustManager) manager).getAcceptedIssuers()) {
+                        trusted.setCertificateEntry("jvm-" + alias++, certificate);
+                    }
+                }
+            }
+            for (X509Certificate certificate : extra) {
+                trusted.setCertificateEntry("extra-" + alias++, certificate);
+            }
+            log.debug("Дополнительных корневых сертификатов: {}", extra.size());
+
+            TrustManagerFactory merged = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            merged.init(trusted);
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, merged.getTrustManagers(), null);
+            return context;
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Ошибка при настройке проверки сертификатов: " + e.getMessage(), e);
+        }
+    }
+
+    // PEM с любым числом сертификатов; файл из одних комментариев допустим
+    private static List<X509Certificate> readCertificates(InputStream in) throws IOException, GeneralSecurityException {
+        byte[] pem = in.readAllBytes();
+        List<X509Certificate> certificates = new ArrayList<>();
+        if (!new String(pem, StandardCharsets.US_ASCII).contains("-----BEGIN CERTIFICATE-----")) {
+            return certificates;
+        }
+        for (Certificate certificate : CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(pem))) {
+            certificates.add((X509Certificate) certificate);
+        }
+        return certificates;
+    }
+
+    /**
+     * Контекст без проверки цепочки и имени хоста, только по явному
+     * -Dbankanalyzer.tls.trustAll=true. Используется только клиентом скрапера;
+     * X509ExtendedTrustManager нужен, чтобы JDK не добавлял свою проверку имени.
+     */
+    private static SSLContext trustAllContext() {
+        log.warn("Проверка TLS-сертификатов отключена ({}=true)", TRUST_ALL_PROPERTY);
+        TrustManager trustAll = new X509ExtendedTrustManager() {
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+            public void checkClientTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+            public void checkServerTrusted(X509Certificate[] chain, String authType, Socket socket) {
+            }
+            public void checkClientTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+            public void checkServerTrusted(X509Certificate[] chain, String authType, SSLEngine engine) {
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[]{trustAll}, new SecureRandom());
+            return context;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Ошибка при настройке SSL", e);
+        }
+    }
+
+    /**
+     * Отдаёт не больше budget байт распакованного тела, дальше — конец потока.
+     */
+    private static final class BudgetInputStream extends FilterInputStream {
+        private long remaining;
+
+        BudgetInputStream(InputStream in, long budget) {
+            super(in);
+            this.remaining = budget > 0 ? budget : Long.MAX_VALUE;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package bankanalyzer.web;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Дисковый кэш HTTP-ответов по URL: тело страницы, валидаторы ETag / Last-Modified,
+ * хэш содержимого и ставки, извлечённые из него вместе с отпечатком правил извлечения. Позволяет отправлять условные запросы
+ * и не разбирать страницу повторно, если она не изменилась. В офлайн-режиме работает
+ * как кэш воспроизведения: сеть не используется вовсе.
+ */
+@Slf4j
+public class PageCache {
+    private static final String DEFAULT_DIRECTORY = "cache/pages";
+    private static final Duration DEFAULT_TTL = Duration.ofHours(1);
+
+    private final Path directory;
+    private final Duration ttl;
+    private final boolean offline;
+
+    public static final class Entry {
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final long fetchedAtMillis;
+        private final String contentHash;
+        private final String configHash;
+        private final double depositRate;
+        private final double loanRate;
+        private final boolean parsed;
+        private final Path bodyFile;
+
+        private Entry(String url, String etag, String lastModified, long fetchedAtMillis, String contentHash,
+                      String configHash, double depositRate, double loanRate, boolean parsed, Path bodyFile) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.contentHash = contentHash;
+            this.configHash = configHash;
+            this.depositRate = depositRate;
+            this.loanRate = loanRate;
+            this.parsed = parsed;
+            this.bodyFile = bodyFile;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public String getContentHash() {
+            return contentHash;
+        }
+
+        public String getConfigHash() {
+            return configHash;
+        }
+
+        /**
+         * Есть ли в записи ставки; пустой результат разбора не сохраняется.
+         */
+        public boolean isParsed() {
+            return parsed;
+        }
+
+        public double getDepositRate() {
+            return depositRate;
+        }
+
+        public double getLoanRate() {
+            return loanRate;
+        }
+
+        public boolean isFresh(Duration ttl) {
+            return System.currentTimeMillis() - fetchedAtMillis < ttl.toMillis();
+        }
+
+        public byte[] readBody() throws IOException {
+            return Files.exists(bodyFile) ? Files.readAllBytes(bodyFile) : null;
+        }
+    }
+
+    public PageCache() {
+        this(Paths.get(DEFAULT_DIRECTORY), DEFAULT_TTL, Boolean.getBoolean("bankanalyzer.offline"));
+    }
+
+    public PageCache(Path directory, Duration ttl, boolean offline) {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.offline = offline;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Запись для URL или null. Запись, сохранённая при других правилах извлечения
+     * (configHash), считается отсутствующей: её ставки и тело нужно получить заново.
+     */
+    public Entry get(String url, String configHash) {
+        Path metaFile = metaFile(url);
+        if (!Files.exists(metaFile)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(metaFile, StandardCharsets.UTF_8)) {
+            props.load(reader);
+            if (!url.equals(props.getProperty("url"))) {
+                return null;
+            }
+            if (!Objects.equals(configHash, props.getProperty("configHash"))) {
+                log.debug("Правила извлечения изменились, запись кэша не используется: {}", url);
+                return null;
+            }
+            String deposit = props.getProperty("depositRate");
+            String loan = props.getProperty("loanRate");
+            return new Entry(
+                    url,
+                    props.getProperty("etag"),
+                    props.getProperty("lastModified"),
+                    Long.parseLong(props.getProperty("fetchedAt", "0")),
+                    props.getProperty("contentHash"),
+                    configHash,
+                    deposit != null ? Double.parseDouble(deposit) : 0.0,
+                    loan != null ? Double.parseDouble(loan) : 0.0,
+                    deposit != null && loan != null,
+                    bodyFile(url));
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Повреждённая запись кэша для {}: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Сохраняет ответ сервера. body может быть null, если тело не сохраняется,
+     * тогда остаются только валидаторы и извлечённые ставки; без contentHash
+     * ранее сохранённое тело удаляется. Нулевые ставки означают, что разбор ничего
+     * не нашёл: такая запись не считается разобранной.
+     */
+    public void put(String url, byte[] body, String etag, String lastModified, String contentHash,
+                    String configHash, double depositRate, double loanRate) {
+        try {
+            Files.createDirectories(directory);
+            if (body != null) {
+                writeAtomically(bodyFile(url), body);
+            } else if (contentHash == null) {
+                // Страница прочитана потоком: старое тело больше не соответствует записи
+                Files.deleteIfExists(bodyFile(url));
+            }
+            Properties props = new Properties();
+            props.setProperty("url", url);
+            props.setProperty("fetchedAt", Long.toString(System.currentTimeMillis()));
+            if (depositRate != 0.0 || loanRate != 0.0) {
+                props.setProperty("depositRate", Double.toString(depositRate));
+                props.setProperty("loanRate", Double.toString(loanRate));
+            }
+            if (etag != null) props.setProperty("etag", etag);
+            if (lastModified != null) props.setProperty("lastModified", lastModified);
+            if (contentHash != null) props.setProperty("contentHash", contentHash);
+            if (configHash != null) props.setProperty("configHash", configHash);
+
+            Path tmp = directory.resolve(metaFile(url).getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                props.store(writer, null);
+            }
+            Files.move(tmp, metaFile(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Ошибка записи в кэш страниц: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Продлевает срок жизни записи после ответа 304 Not Modified.
+     */
+    public void touch(Entry entry) {
+        put(entry.url, null, entry.etag, entry.lastModified, entry.contentHash, entry.configHash,
+                entry.depositRate, entry.loanRate);
+    }
+
+    public static String hash(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private Path metaFile(String url) {
+        return directory.resolve(key(url) + ".properties");
+    }
+
+    private Path bodyFile(String url) {
+        return directory.resolve(key(url) + ".html");
+    }
+
+    private static String key(String url) {
+        return hash(url.getBytes(StandardCharsets.UTF_8)).substring(0, 32);
+    }
+
+    private void writeAtomically(Path file, byte[] content) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, content);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
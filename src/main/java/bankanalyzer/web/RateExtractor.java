@@ -0,0 +1,312 @@
+package bankanalyzer.web;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.NodeFilter;
+import org.jsoup.select.NodeTraversor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Извлечение ставок по вкладам и кредитам за один обход документа.
+ * Сначала проверяются заранее скомпилированные селекторы источника, если они заданы,
+ * затем недостающие ставки ищутся по собственным текстовым узлам: ключевые слова обеих
+ * групп ищутся одновременно автоматом Ахо-Корасик без приведения строк к нижнему регистру.
+ * Процент, найденный в узле с ключевым словом или в нескольких следующих за ним узлах,
+ * относится к группе этого слова.
+ *
+ * Экземпляр неизменяем и может использоваться из нескольких потоков.
+ */
+public final class RateExtractor {
+    public static final int DEPOSIT = 1;
+    public static final int LOAN = 2;
+
+    public static final List<String> DEFAULT_DEPOSIT_KEYWORDS =
+            Arrays.asList("вклад", "депозит", "savings", "deposit");
+    public static final List<String> DEFAULT_LOAN_KEYWORDS =
+            Arrays.asList("кредит", "заем", "заём", "ипотека", "loan", "credit", "mortgage");
+    public static final double DEFAULT_MIN_RATE = 1.0;
+    public static final double DEFAULT_MAX_RATE = 30.0;
+
+    public static final RateExtractor DEFAULT = new RateExtractor(DEFAULT_DEPOSIT_KEYWORDS, DEFAULT_LOAN_KEYWORDS,
+            DEFAULT_MIN_RATE, DEFAULT_MAX_RATE, null, null);
+
+    // Сколько текстовых узлов после ключевого слова ещё может стоять его ставка
+    private static final int CONTEXT_NODES = 4;
+
+    private static final Pattern PERCENT = Pattern.compile("(\\d{1,2}(?:[.,]\\d{1,2})?)\\s*%");
+
+    private final KeywordAutomaton keywords;
+    private final double minRate;
+    private final double maxRate;
+    private final Evaluator depositSelector;
+    private final Evaluator loanSelector;
+
+    public static final class Rates {
+        private double depositRate;
+        private double loanRate;
+
+        public double getDepositRate() {
+            return depositRate;
+        }
+
+        public double getLoanRate() {
+            return loanRate;
+        }
+
+        boolean isComplete() {
+            return depositRate > 0 && loanRate > 0;
+        }
+    }
+
+    /**
+     * @param depositSelector селектор элементов со ставкой по вкладу или null
+     * @param loanSelector    селектор элементов со ставкой по кредиту или null
+     */
+    public RateExtractor(List<String> depositKeywords, List<String> loanKeywords, double minRate, double maxRate,
+                         Evaluator depositSelector, Evaluator loanSelector) {
+        this.keywords = new KeywordAutomaton(depositKeywords, loanKeywords);
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.depositSelector = depositSelector;
+        this.loanSelector = loanSelector;
+    }
+
+    public Rates extract(Document doc) {
+        TextScanner scanner = new TextScanner();
+        if (depositSelector != null) {
+            scanner.rates.depositRate = selectRate(doc, depositSelector);
+        }
+        if (loanSelector != null) {
+            scanner.rates.loanRate = selectRate(doc, loanSelector);
+        }
+        if (scanner.rates.isComplete()) {
+            return scanner.rates;
+        }
+
+        NodeTraversor.filter(new NodeFilter() {
+            @Override
+            public FilterResult head(Node node, int depth) {
+                if (node instanceof TextNode && scanner.accept(((TextNode) node).getWholeText())) {
+                    return FilterResult.STOP;
+                }
+                return FilterResult.CONTINUE;
+            }
+
+            @Override
+            public FilterResult tail(Node node, int depth) {
+                return FilterResult.CONTINUE;
+            }
+        }, doc);
+        return scanner.rates;
+    }
+
+    /**
+     * Потоковый вариант: элементы разбираются по мере чтения страницы и сразу
+     * удаляются из дерева, так что в памяти остаётся только открытая ветка.
+     * Чтение прекращается, как только найдены обе ставки; вызывающий закрывает парсер.
+     * Элементы приходят по закрытию тега, поэтому собственный текст родителя
+     * просматривается после его дочерних элементов, а селекторы с условиями
+     * на соседей могут не сработать.
+     */
+    public Rates extract(StreamParser parser) {
+        TextScanner scanner = new TextScanner();
+        Rates rates = scanner.rates;
+        Iterator<Element> elements = parser.iterator();
+        while (elements.hasNext()) {
+            Element element = elements.next();
+            if (depositSelector != null && rates.depositRate == 0 && element.is(depositSelector)) {
+                rates.depositRate = firstRate(element.text());
+            }
+            if (loanSelector != null && rates.loanRate == 0 && element.is(loanSelector)) {
+                rates.loanRate = firstRate(element.text());
+            }
+            if (rates.isComplete()) {
+                parser.stop();
+                return rates;
+            }
+            for (TextNode textNode : element.textNodes()) {
+                if (scanner.accept(textNode.getWholeText())) {
+                    parser.stop();
+                    return rates;
+                }
+            }
+            element.remove();
+        }
+        return rates;
+    }
+
+    /**
+     * Маска групп ключевых слов ({@link #DEPOSIT}, {@link #LOAN}), встречающихся в тексте.
+     */
+    public int keywordGroups(CharSequence text) {
+        return keywords.scan(text);
+    }
+
+    /**
+     * Первое число перед знаком процента в правдоподобном диапазоне ставок или 0.
+     */
+    public double firstRate(CharSequence text) {
+        Matcher matcher = PERCENT.matcher(text);
+        while (matcher.find()) {
+            double rate = Double.parseDouble(matcher.group(1).replace(',', '.'));
+            if (rate > minRate && rate < maxRate) {
+                return rate;
+            }
+        }
+        return 0.0;
+    }
+
+    private double selectRate(Document doc, Evaluator selector) {
+        for (Element element : doc.select(selector)) {
+            double rate = firstRate(element.text());
+            if (rate > 0) {
+                return rate;
+            }
+        }
+        return 0.0;
+    }
+
+    /**
+     * Сопоставление текстов с ключевыми словами в порядке их появления.
+     */
+    private final class TextScanner {
+        private final Rates rates = new Rates();
+        private int pending;
+        private int distance;
+
+        /**
+         * Учитывает очередной текст; true, когда обе ставки найдены.
+         */
+        boolean accept(String text) {
+            int found = keywords.scan(text);
+            if (found != 0) {
+                pending = found;
+                distance = 0;
+            } else if (pending != 0 && ++distance > CONTEXT_NODES) {
+                pending = 0;
+            }
+
+            if (pending != 0 && text.indexOf('%') >= 0) {
+                double rate = firstRate(text);
+                if (rate > 0) {
+                    if ((pending & DEPOSIT) != 0 && rates.depositRate == 0) {
+                        rates.depositRate = rate;
+                    }
+                    if ((pending & LOAN) != 0 && rates.loanRate == 0) {
+                        rates.loanRate = rate;
+                    }
+                    pending = 0;
+                }
+            }
+            return rates.isComplete();
+        }
+    }
+
+    /**
+     * Автомат Ахо-Корасик с полностью построенной таблицей переходов: символы
+     * ключевых слов сжимаются в маленький алфавит, остальные попадают в класс 0.
+     * Таблица классов покрывает символы только до наибольшего из ключевых слов.
+     */
+    private static final class KeywordAutomaton {
+        private final char[] charClass;
+        private final int[][] next;
+        private final int[] output;
+
+        KeywordAutomaton(List<String> depositKeywords, List<String> loanKeywords) {
+            List<String> words = new ArrayList<>();
+            List<Integer> groups = new ArrayList<>();
+            for (String word : depositKeywords) {
+                words.add(word.toLowerCase());
+                groups.add(DEPOSIT);
+            }
+            for (String word : loanKeywords) {
+                words.add(word.toLowerCase());
+                groups.add(LOAN);
+            }
+
+            int maxChar = 0;
+            int maxStates = 1;
+            for (String word : words) {
+                maxStates += word.length();
+                for (char c : word.toCharArray()) {
+                    maxChar = Math.max(maxChar, Math.max(c, Character.toUpperCase(c)));
+                }
+            }
+
+            charClass = new char[maxChar + 1];
+            int alphabet = 1;
+            for (String word : words) {
+                for (char c : word.toCharArray()) {
+                    if (charClass[c] == 0) {
+                        charClass[c] = (char) alphabet++;
+                        charClass[Character.toUpperCase(c)] = charClass[c];
+                    }
+                }
+            }
+
+            int[][] trie = new int[maxStates][alphabet];
+            int[] out = new int[maxStates];
+            int states = 1;
+            for (int w = 0; w < words.size(); w++) {
+                int state = 0;
+                for (char c : words.get(w).toCharArray()) {
+                    int cls = charClass[c];
+                    if (trie[state][cls] == 0) {
+                        trie[state][cls] = states++;
+                    }
+                    state = trie[state][cls];
+                }
+                out[state] |= groups.get(w);
+            }
+
+            // Обход в ширину: недостающие переходы берутся из суффиксной ссылки
+            int[] fail = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int cls = 1; cls < alphabet; cls++) {
+                if (trie[0][cls] != 0) {
+                    queue[tail++] = trie[0][cls];
+                }
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                out[state] |= out[fail[state]];
+                for (int cls = 1; cls < alphabet; cls++) {
+                    int child = trie[state][cls];
+                    if (child != 0) {
+                        fail[child] = trie[fail[state]][cls];
+                        queue[tail++] = child;
+                    } else {
+                        trie[state][cls] = trie[fail[state]][cls];
+                    }
+                }
+            }
+
+            this.next = trie;
+            this.output = out;
+        }
+
+        int scan(CharSequence text) {
+            char[] classes = charClass;
+            int state = 0;
+            int found = 0;
+            for (int i = 0, n = text.length(); i < n; i++) {
+                char c = text.charAt(i);
+                state = next[state][c < classes.length ? classes[c] : 0];
+                found |= output[state];
+            }
+            return found;
+        }
+    }
+}
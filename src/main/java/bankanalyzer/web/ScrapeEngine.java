@@ -0,0 +1,211 @@
+package bankanalyzer.web;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Параллельный загрузчик страниц: ограниченный пул воркеров, задержка вежливости
+ * на каждый хост отдельно и общий дедлайн на весь цикл обновления.
+ */
+public class ScrapeEngine {
+    private static final int DEFAULT_PARALLELISM = 8;
+    private static final long DEFAULT_HOST_DELAY_MILLIS = 2000;
+    private static final long DEFAULT_DEADLINE_MILLIS = 30000;
+
+    private final int parallelism;
+    private final long hostDelayMillis;
+    private final long deadlineMillis;
+
+    // Время (System.nanoTime), раньше которого к хосту нельзя обращаться повторно:
+    // конец последней загрузки плюс задержка, переживает циклы обновления
+    private final Map<String, Long> nextHostSlot = new ConcurrentHashMap<>();
+
+    public ScrapeEngine() {
+        this(DEFAULT_PARALLELISM, DEFAULT_HOST_DELAY_MILLIS, DEFAULT_DEADLINE_MILLIS);
+    }
+
+    public ScrapeEngine(int parallelism, long hostDelayMillis, long deadlineMillis) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism должен быть >= 1");
+        }
+        this.parallelism = parallelism;
+        this.hostDelayMillis = hostDelayMillis;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    @FunctionalInterface
+    public interface FetchTask<T> {
+        T fetch(String url) throws Exception;
+    }
+
+    public enum Status { OK, FAILED, TIMED_OUT }
+
+    @Getter
+    public static final class Outcome<T> {
+        private final String url;
+        private final Status status;
+        private final T value;
+        private final Throwable error;
+        private final long elapsedMillis;
+
+        private Outcome(String url, Status status, T value, Throwable error, long elapsedMillis) {
+            this.url = url;
+            this.status = status;
+            this.value = value;
+            this.error = error;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        private Outcome<T> withElapsed(long millis) {
+            return new Outcome<>(url, status, value, error, millis);
+        }
+
+        public boolean isOk() {
+            return status == Status.OK;
+        }
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Загружает все URL параллельно. Запросы к одному хосту идут цепочкой: следующий
+     * стартует через hostDelay после завершения предыдущего, а ожидание задержки не занимает
+     * ни воркер, ни разрешение. Результаты возвращаются в порядке входного списка;
+     * задачи, не успевшие к дедлайну, отменяются и помечаются как TIMED_OUT.
+     */
+    public <T> List<Outcome<T>> fetchAll(List<String> urls, FetchTask<T> task) {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(hostDelayMillis);
+
+        ExecutorService executor = newExecutor();
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<T>> futures = new ArrayList<>(urls.size());
+        AtomicLongArray fetchNanos = new AtomicLongArray(urls.size());
+        // Последний запрос каждого хоста в этом цикле
+        Map<String, CompletableFuture<T>> hostTails = new HashMap<>();
+
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                String url = urls.get(i);
+                String host = hostOf(url);
+                int index = i;
+                Supplier<T> fetch = () -> {
+                    try {
+                        // Разрешение держится только на время самой загрузки
+                        permits.acquire();
+                        try {
+                            long fetchStart = System.nanoTime();
+                            try {
+                                return task.fetch(url);
+                            } finally {
+                                long fetchEnd = System.nanoTime();
+                                fetchNanos.set(index, fetchEnd - fetchStart);
+                                nextHostSlot.put(host, fetchEnd + delayNanos);
+                            }
+                        } finally {
+                            permits.release();
+                        }
+                    } catch (RuntimeException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        if (e instanceof InterruptedException) {
+                            Thread.currentThread().interrupt();
+                        }
+                        throw new CompletionException(e);
+                    }
+                };
+
+                CompletableFuture<T> previous = hostTails.get(host);
+                CompletableFuture<T> future;
+                if (previous == null) {
+                    // Первый запрос к хосту ждёт окончания задержки после прошлого цикла
+                    Long slot = nextHostSlot.get(host);
+                    long waitNanos = slot == null ? 0 : Math.max(0, slot - System.nanoTime());
+                    future = CompletableFuture.supplyAsync(fetch, startAfter(waitNanos, executor));
+                } else {
+                    // Успех или ошибка предыдущего запроса одинаково открывают следующий
+                    future = previous.handle((value, error) -> null)
+                            .thenApplyAsync(ignored -> fetch.get(), startAfter(delayNanos, executor));
+                }
+                hostTails.put(host, future);
+                futures.add(future);
+            }
+
+            List<Outcome<T>> outcomes = new ArrayList<>(urls.size());
+            for (int i = 0; i < urls.size(); i++) {
+                Outcome<T> outcome = awaitOutcome(urls.get(i), futures.get(i), startNanos, deadlineNanos);
+                long fetchMillis = TimeUnit.NANOSECONDS.toMillis(fetchNanos.get(i));
+                outcomes.add(outcome.status == Status.TIMED_OUT ? outcome : outcome.withElapsed(fetchMillis));
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Executor startAfter(long delayNanos, Executor executor) {
+        return delayNanos > 0
+                ? CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor)
+                : executor;
+    }
+
+    private <T> Outcome<T> awaitOutcome(String url, Future<T> future,
+                                        long startNanos, long deadlineNanos) {
+        try {
+            long remaining = Math.max(0, deadlineNanos - System.nanoTime());
+            T value = future.get(remaining, TimeUnit.NANOSECONDS);
+            return new Outcome<>(url, Status.OK, value, null, 0);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return new Outcome<>(url, Status.TIMED_OUT, null,
+                    new TimeoutException("превышен общий дедлайн " + deadlineMillis + " мс"),
+                    elapsedSince(startNanos));
+        } catch (ExecutionException e) {
+            return new Outcome<>(url, Status.FAILED, null, e.getCause(), 0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            return new Outcome<>(url, Status.TIMED_OUT, null, e, elapsedSince(startNanos));
+        }
+    }
+
+    private ExecutorService newExecutor() {
+        // На JDK 21+ используем виртуальные потоки, иначе фиксированный пул. Задержки хостов
+        // отсчитывает таймер CompletableFuture, так что воркеры заняты только загрузкой
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(parallelism, runnable -> {
+                Thread thread = new Thread(runnable, "scraper-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    private static long elapsedSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
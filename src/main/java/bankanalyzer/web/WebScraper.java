@@ -1,318 +1,290 @@
 package bankanalyzer.web;
 
+import lombok.extern.slf4j.Slf4j;
 import org.jsoup.Jsoup;
+import org.jsoup.helper.DataUtil;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
 import bankanalyzer.data.BankData;
+import bankanalyzer.metrics.Counter;
+import bankanalyzer.metrics.Metrics;
 
-import javax.net.ssl.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.NoSuchAlgorithmException;
-import java.security.cert.X509Certificate;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
+@Slf4j
 public class WebScraper {
-    private static final String[] BANK_URLS = {
-            "https://www.sberbank.ru/",
-            "https://www.vtb.ru/",
-            "https://www.tinkoff.ru/",
-            "https://www.alfabank.ru/",
-            "https://www.gazprombank.ru/",
-            "https://www.raiffeisen.ru/",
-            "https://www.open.ru/",
-            "https://www.mkb.ru/"
-    };
-
-    static {
-        // Инициализируем SSL обход при загрузке класса
-        initSSL();
+    private static final int REQUEST_TIMEOUT_MILLIS = 20000;
+    // Главные страницы банков укладываются в пару мегабайт; больше читать незачем
+    public static final int DEFAULT_MAX_BODY_BYTES = 2 * 1024 * 1024;
+    // Без charset в Content-Type кодировку ищем в начале страницы, как и сам jsoup
+    private static final int CHARSET_SNIFF_BYTES = 5 * 1024;
+
+    private static final Metrics METRICS = Metrics.global();
+
+    private final List<BankSource> sources;
+    private final ScrapeEngine engine;
+    private final HttpTransport transport;
+    private final PageCache cache;
+    private final int maxBodyBytes;
+    private final boolean streaming;
+
+    public WebScraper() {
+        this(new ScrapeEngine());
     }
 
-    private static void initSSL() {
-        try {
-            // Создаем trust manager который доверяет всем сертификатам
-            TrustManager[] trustAllCerts = new TrustManager[]{
-                    new X509TrustManager() {
-                        public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                            return null;
-                        }
-                        public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                        }
-                        public void checkServerTrusted(X509Certificate[] certs, String authType) {
-                        }
-                    }
-            };
-
-            SSLContext sc = SSLContext.getInstance("SSL");
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
-
-            HostnameVerifier allHostsValid = (hostname, session) -> true;
-            HttpsURLConnection.setDefaultHostnameVerifier(allHostsValid);
+    public WebScraper(ScrapeEngine engine) {
+        this(BankSources.load(), engine, new JdkHttpTransport(), new PageCache(), DEFAULT_MAX_BODY_BYTES, true);
+    }
 
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            System.err.println("Ошибка при настройке SSL: " + e.getMessage());
-        }
+    /**
+     * @param maxBodyBytes бюджет чтения одной страницы в байтах
+     * @param streaming    разбирать страницу потоком и прекращать чтение, как только
+     *                     найдены обе ставки; тело страницы при этом не кэшируется
+     */
+    public WebScraper(List<BankSource> sources, ScrapeEngine engine, HttpTransport transport, PageCache cache,
+                      int maxBodyBytes, boolean streaming) {
+        this.sources = sources;
+        this.engine = engine;
+        this.transport = transport;
+        this.cache = cache;
+        this.maxBodyBytes = maxBodyBytes;
+        this.streaming = streaming;
     }
 
     public List<BankData> scrapeBankRates() {
+        long startNanos = System.nanoTime();
         List<BankData> bankDataList = new ArrayList<>();
+        int requestTimeout = (int) Math.min(REQUEST_TIMEOUT_MILLIS, engine.getDeadlineMillis());
 
-        for (String url : BANK_URLS) {
-            try {
-                System.out.println("Сканируем: " + url);
-
-                Document doc = Jsoup.connect(url)
-                        .userAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36")
-                        .timeout(20000)
-                        .ignoreHttpErrors(true)
-                        .ignoreContentType(true)
-                        .followRedirects(true)
-                        .maxBodySize(0)
-                        .get();
-
-                BankData data = parseBankData(doc, url);
-                if (data != null) {
-                    bankDataList.add(data);
-                    System.out.println("Данные получены для: " + data.getBankName());
-                } else {
-                    bankDataList.add(createMockDataForBank(url));
-                }
-
-                Thread.sleep(2000);
+        Map<String, BankSource> sourcesByUrl = new LinkedHashMap<>();
+        for (BankSource source : sources) {
+            sourcesByUrl.putIfAbsent(source.getUrl(), source);
+        }
 
-            } catch (IOException | InterruptedException e) {
-                System.err.println("Ошибка при сканировании: " + url + " - " + e.getMessage());
-                bankDataList.add(createMockDataForBank(url));
+        List<ScrapeEngine.Outcome<BankData>> outcomes = engine.fetchAll(new ArrayList<>(sourcesByUrl.keySet()),
+                url -> fetchBankData(sourcesByUrl.get(url), requestTimeout));
+
+        for (ScrapeEngine.Outcome<BankData> outcome : outcomes) {
+            String url = outcome.getUrl();
+            BankSource source = sourcesByUrl.get(url);
+            String result;
+            switch (outcome.getStatus()) {
+                case OK:
+                    if (outcome.getValue() != null) {
+                        bankDataList.add(outcome.getValue());
+                        log.info("Данные получены для: {} ({} мс)", outcome.getValue().getBankName(),
+                                outcome.getElapsedMillis());
+                        result = "ok";
+                    } else {
+                        bankDataList.add(source.createFallbackData());
+                        result = "empty";
+                    }
+                    break;
+                case TIMED_OUT:
+                    log.warn("Превышено время ожидания: {} - {}", url, outcome.getError().getMessage());
+                    bankDataList.add(source.createFallbackData());
+                    result = "timeout";
+                    break;
+                default:
+                    log.warn("Ошибка при сканировании: {} - {}", url, outcome.getError().getMessage());
+                    bankDataList.add(source.createFallbackData());
+                    result = "error";
+                    break;
             }
+            // Всё, кроме ok, означает подстановку резервных данных
+            METRICS.counter("scraper_results_total", "Результаты сбора по банкам; кроме ok — резервные данные",
+                    "bank", source.getId(), "result", result).increment();
         }
 
+        METRICS.timer("scraper_run_seconds", "Полный проход сбора по всем банкам").recordSince(startNanos);
         return bankDataList;
     }
 
-    private BankData parseBankData(Document doc, String url) {
-        String bankName = extractBankNameFromUrl(url);
-
-        double depositRate = extractDepositRate(doc, bankName);
-        double loanRate = extractLoanRate(doc, bankName);
-        double investmentReturn = calculateInvestmentReturn(depositRate);
-
-        if (depositRate == 0.0 && loanRate == 0.0) {
-            return null;
+    /**
+     * Загружает страницу банка с учётом кэша: в пределах TTL сеть не используется,
+     * после него отправляется условный запрос. Если сервер ответил 304 или тело
+     * не изменилось, повторно используются ранее извлечённые ставки. Запись без ставок
+     * или сохранённая при других правилах извлечения не используется.
+     */
+    private BankData fetchBankData(BankSource source, int requestTimeout) throws IOException {
+        String url = source.getUrl();
+        PageCache.Entry cached = cache.get(url, source.getConfigHash());
+        if (cached != null && cached.isParsed() && (cache.isOffline() || cached.isFresh(cache.getTtl()))) {
+            log.debug("Из кэша: {}", url);
+            return toBankData(source, cached.getDepositRate(), cached.getLoanRate());
         }
-
-        return new BankData(
-                bankName,
-                depositRate,
-                loanRate,
-                investmentReturn,
-                LocalDate.now(),
-                365
-        );
-    }
-
-    private double extractDepositRate(Document doc, String bankName) {
-        switch (bankName) {
-            case "sberbank":
-                return extractSberbankRate(doc, "вклад", "депозит");
-            case "vtb":
-                return extractVtbRate(doc);
-            case "tinkoff":
-                return extractTinkoffRate(doc);
-            case "alfabank":
-                return extractAlfabankRate(doc);
-            default:
-                return extractGenericRate(doc, new String[]{"вклад", "депозит", "savings", "deposit"});
+        if (cache.isOffline()) {
+            throw new IOException("Страница отсутствует в офлайн-кэше");
         }
-    }
 
-    private double extractLoanRate(Document doc, String bankName) {
-        switch (bankName) {
-            case "sberbank":
-                return extractSberbankRate(doc, "кредит", "заем");
-            case "vtb":
-                return extractGenericRate(doc, new String[]{"кредит", "loan", "credit"});
-            default:
-                return extractGenericRate(doc, new String[]{"кредит", "заем", "ипотека", "loan", "credit", "mortgage"});
+        log.debug("Сканируем: {}", url);
+        // Без ставок в записи ответ 304 бесполезен, поэтому валидаторы не отправляем
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null && cached.isParsed() && cached.getEtag() != null) {
+            headers.put("If-None-Match", cached.getEtag());
+        }
+        if (cached != null && cached.isParsed() && cached.getLastModified() != null) {
+            headers.put("If-Modified-Since", cached.getLastModified());
         }
-    }
 
-    private double extractSberbankRate(Document doc, String... keywords) {
+        long requestStart = System.nanoTime();
+        HttpTransport.Response response = transport.get(url, headers, requestTimeout, maxBodyBytes);
         try {
-            Elements rateElements = doc.select(".rate, .percentage, .interest-rate");
-            for (Element element : rateElements) {
-                String text = element.text().toLowerCase();
-                for (String keyword : keywords) {
-                    if (text.contains(keyword)) {
-                        return extractNumberFromText(text);
-                    }
+            METRICS.timer("scraper_fetch_seconds", "Время до получения заголовков ответа",
+                    "bank", source.getId()).recordSince(requestStart);
+            if (response.statusCode() == 304) {
+                if (cached != null && cached.isParsed()) {
+                    cache.touch(cached);
+                    return toBankData(source, cached.getDepositRate(), cached.getLoanRate());
                 }
+                // 304 без тела, а ставок в кэше нет: повторяем запрос без условий
+                log.debug("Ответ 304 без ставок в кэше, повторный запрос: {}", url);
+                response.close();
+                response = transport.get(url, new HashMap<>(), requestTimeout, maxBodyBytes);
             }
-        } catch (Exception e) {
-            System.err.println("Ошибка парсинга Сбербанка: " + e.getMessage());
+            long parseStart = System.nanoTime();
+            BankData data = streaming ? streamBankData(source, response) : parseBankData(source, response, cached);
+            METRICS.timer("scraper_parse_seconds", "Чтение тела страницы и извлечение ставок",
+                    "bank", source.getId()).recordSince(parseStart);
+            return data;
+        } finally {
+            response.close();
         }
-        return 0.0;
     }
 
-    private double extractVtbRate(Document doc) {
-        try {
-            Elements elements = doc.select("[class*='rate'], [class*='percent']");
-            for (Element element : elements) {
-                String text = element.text();
-                if (text.contains("%")) {
-                    return extractNumberFromText(text);
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Ошибка парсинга ВТБ: " + e.getMessage());
+    private BankData parseBankData(BankSource source, HttpTransport.Response response, PageCache.Entry cached)
+            throws IOException {
+        String url = source.getUrl();
+        byte[] body = response.bodyAsBytes();
+        bytesCounter(source).add(body.length);
+        String contentHash = PageCache.hash(body);
+        double depositRate;
+        double loanRate;
+        if (cached != null && cached.isParsed() && contentHash.equals(cached.getContentHash())) {
+            depositRate = cached.getDepositRate();
+            loanRate = cached.getLoanRate();
+        } else {
+            Document doc = Jsoup.parse(new ByteArrayInputStream(body), response.charset(), url);
+            RateExtractor.Rates rates = source.extract(doc);
+            depositRate = rates.getDepositRate();
+            loanRate = rates.getLoanRate();
         }
-        return 0.0;
-    }
 
-    private double extractGenericRate(Document doc, String[] keywords) {
-        try {
-            Elements elements = doc.select("div, span, p, td, li, a, h1, h2, h3, h4, h5, h6");
-            for (Element element : elements) {
-                String text = element.text().toLowerCase();
-                for (String keyword : keywords) {
-                    if (text.contains(keyword) && text.contains("%")) {
-                        double rate = extractNumberFromText(text);
-                        if (rate > 1.0 && rate < 30.0) { // Проверяем разумность значения
-                            return rate;
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("Ошибка generic парсинга: " + e.getMessage());
+        // Ошибочные ответы не кэшируем, чтобы следующий запуск повторил попытку
+        if (response.statusCode() < 400) {
+            cache.put(url, body, response.header("ETag"), response.header("Last-Modified"),
+                    contentHash, source.getConfigHash(), depositRate, loanRate);
         }
-        return 0.0;
+        return toBankData(source, depositRate, loanRate);
     }
 
-    private double calculateInvestmentReturn(double depositRate) {
-        if (depositRate == 0.0) {
-            Random random = new Random();
-            return 8.0 + random.nextDouble() * 4.0;
+    private BankData streamBankData(BankSource source, HttpTransport.Response response) throws IOException {
+        RateExtractor.Rates rates;
+        CountingInputStream body = new CountingInputStream(response.body());
+        BufferedInputStream buffered = new BufferedInputStream(body, CHARSET_SNIFF_BYTES);
+        String charset = response.charset() != null ? response.charset() : sniffCharset(buffered, source.getUrl());
+        try (StreamParser parser = new StreamParser(Parser.htmlParser())
+                .parse(skipBom(new InputStreamReader(buffered, charset)), source.getUrl())) {
+            rates = source.extract(parser);
+        } finally {
+            bytesCounter(source).add(body.count);
         }
-
-        return depositRate * (1.3 + new Random().nextDouble() * 0.4);
+        if (response.statusCode() < 400) {
+            cache.put(source.getUrl(), null, response.header("ETag"), response.header("Last-Modified"),
+                    null, source.getConfigHash(), rates.getDepositRate(), rates.getLoanRate());
+        }
+        return toBankData(source, rates.getDepositRate(), rates.getLoanRate());
     }
 
-    private BankData createMockDataForBank(String url) {
-        String bankName = extractBankNameFromUrl(url);
-        Random random = new Random();
-
-        switch (bankName) {
-            case "alfabank":
-                return new BankData("Альфа-Банк",
-                        6.2 + random.nextDouble(),
-                        11.5 + random.nextDouble() * 2.0,
-                        9.5 + random.nextDouble() * 1.5,
-                        LocalDate.now(), 365);
-
-            case "open":
-                return new BankData("Банк Открытие",
-                        5.8 + random.nextDouble() * 0.8,
-                        12.0 + random.nextDouble() * 2.5,
-                        8.7 + random.nextDouble() * 1.2,
-                        LocalDate.now(), 365);
-
-            case "sberbank":
-                return new BankData("Сбербанк",
-                        5.0 + random.nextDouble(),
-                        13.0 + random.nextDouble() * 2.0,
-                        7.5 + random.nextDouble() * 1.5,
-                        LocalDate.now(), 365);
-
-            case "tinkoff":
-                return new BankData("Тинькофф",
-                        7.0 + random.nextDouble() * 1.5,
-                        10.5 + random.nextDouble() * 1.5,
-                        10.5 + random.nextDouble() * 2.0,
-                        LocalDate.now(), 365);
+    /**
+     * Определяет кодировку по BOM или {@code <meta charset>} в первых килобайтах страницы
+     * тем же кодом jsoup, что и при разборе целого тела; поток возвращается к началу.
+     */
+    private static String sniffCharset(BufferedInputStream in, String url) throws IOException {
+        in.mark(CHARSET_SNIFF_BYTES);
+        byte[] head = in.readNBytes(CHARSET_SNIFF_BYTES);
+        in.reset();
+        return DataUtil.load(new ByteArrayInputStream(head), null, url).charset().name();
+    }
 
-            default:
-                return new BankData(bankName,
-                        6.0 + random.nextDouble() * 2.0,
-                        12.0 + random.nextDouble() * 3.0,
-                        9.0 + random.nextDouble() * 2.5,
-                        LocalDate.now(), 365);
+    // InputStreamReader оставляет BOM в тексте; jsoup при разборе целого тела его отбрасывает
+    private static Reader skipBom(Reader reader) throws IOException {
+        BufferedReader buffered = new BufferedReader(reader);
+        buffered.mark(1);
+        if (buffered.read() != '\uFEFF') {
+            buffered.reset();
         }
+        return buffered;
     }
 
-    private double extractNumberFromText(String text) {
-        try {
-            Pattern pattern = Pattern.compile("(\\d+[.,]?\\d*)%?");
-            Matcher matcher = pattern.matcher(text);
-            if (matcher.find()) {
-                String numberStr = matcher.group(1).replace(',', '.');
-                return Double.parseDouble(numberStr);
-            }
-        } catch (NumberFormatException e) {
-            System.err.println("Ошибка преобразования числа: " + text);
-        }
-        return 0.0;
+    private static Counter bytesCounter(BankSource source) {
+        return METRICS.counter("scraper_bytes_total", "Прочитано байт тела страниц (после распаковки)",
+                "bank", source.getId());
     }
 
-    private String extractBankNameFromUrl(String url) {
-        String cleanedUrl = url.replace("https://", "")
-                .replace("http://", "")
-                .replace("www.", "");
+    private BankData toBankData(BankSource source, double depositRate, double loanRate) {
+        if (depositRate == 0.0 && loanRate == 0.0) {
+            return null;
+        }
 
-        int dotIndex = cleanedUrl.indexOf('.');
-        if (dotIndex > 0) {
-            String domain = cleanedUrl.substring(0, dotIndex);
+        return new BankData(
+                source.getBankName(),
+                depositRate,
+                loanRate,
+                calculateInvestmentReturn(depositRate),
+                LocalDate.now(),
+                source.getTermDays()
+        );
+    }
 
-            switch (domain) {
-                case "sberbank": return "Сбербанк";
-                case "vtb": return "ВТБ";
-                case "tinkoff": return "Тинькофф";
-                case "alfabank": return "Альфа-Банк";
-                case "gazprombank": return "Газпромбанк";
-                case "raiffeisen": return "Райффайзен";
-                case "open": return "Банк Открытие";
-                case "mkb": return "МКБ";
-                default: return domain;
-            }
+    private double calculateInvestmentReturn(double depositRate) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (depositRate == 0.0) {
+            return 8.0 + random.nextDouble() * 4.0;
         }
 
-        return cleanedUrl.replace("/", "");
+        return depositRate * (1.3 + random.nextDouble() * 0.4);
     }
 
-    private double extractTinkoffRate(Document doc) {
-        try {
-            Elements elements = doc.select("[data-qa-type*='rate'], [class*='rate']");
-            for (Element element : elements) {
-                String text = element.text();
-                if (text.contains("%")) {
-                    return extractNumberFromText(text);
-                }
+    // Потоковый разбор может остановиться раньше конца страницы: считаем только прочитанное
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
             }
-        } catch (Exception e) {
-            System.err.println("Ошибка парсинга Тинькофф: " + e.getMessage());
+            return b;
         }
-        return 0.0;
-    }
 
-    private double extractAlfabankRate(Document doc) {
-        try {
-            Elements elements = doc.select(".product-rate, .interest-rate, .percentage-value");
-            for (Element element : elements) {
-                String text = element.text();
-                if (text.contains("%")) {
-                    return extractNumberFromText(text);
-                }
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
             }
-        } catch (Exception e) {
-            System.err.println("Ошибка парсинга Альфа-Банка: " + e.getMessage());
+            return read;
         }
-        return 0.0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package bankanalyzer.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BankDataCsvCodecTest {
+
+    @Test
+    void rejectsOverWideRowWithQuotedTrailingField() throws IOException {
+        StringBuilder csv = new StringBuilder(BankDataCsvCodec.HEADER).append('\n');
+        csv.append("A");
+        for (int i = 1; i <= 16; i++) {
+            csv.append(',').append(i);
+        }
+        csv.append(",\"x,\ny\"\n");
+        csv.append("Сбербанк,7.50,12.00,8.25,2024-03-01,365\n");
+
+        List<BankData> rows = new ArrayList<>();
+        BankDataCsvCodec.ReadStats stats = new BankDataCsvCodec().read(new StringReader(csv.toString()), rows::add);
+
+        assertEquals(1, stats.getRowsRead());
+        assertEquals(1, stats.getRowsRejected());
+        assertEquals(2, stats.getFirstRejectedLine());
+        assertEquals(1, rows.size());
+        assertEquals("Сбербанк", rows.get(0).getBankName());
+        assertEquals(LocalDate.of(2024, 3, 1), rows.get(0).getDate());
+        assertEquals(365, rows.get(0).getTermDays());
+    }
+}
@@ -0,0 +1,151 @@
+package bankanalyzer.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataStorageTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void failedAppendDoesNotHideRowsFromNextSave() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        // Каталог на месте файла: дописать строки не получится
+        Files.createDirectory(file);
+        DataStorage storage = new DataStorage(file);
+        List<BankData> rows = List.of(row("Сбербанк", 7.5, 365), row("ВТБ", 8.0, 365));
+
+        storage.saveData(rows);
+        assertTrue(storage.currentData().isEmpty());
+
+        Files.delete(file);
+        storage.saveData(rows);
+
+        assertEquals(2, new DataStorage(file).loadData().size());
+    }
+
+    @Test
+    void laterObservationReplacesEarlierOneWithSameKey() {
+        Path file = dir.resolve("bank_data.csv");
+        DataStorage storage = new DataStorage(file);
+        storage.saveData(List.of(row("Сбербанк", 7.5, 365), row("Сбербанк", 7.5, 90)));
+        storage.saveData(List.of(row("Сбербанк", 7.8, 365)));
+
+        List<BankData> loaded = new DataStorage(file).loadData();
+        assertEquals(2, loaded.size());
+        assertEquals(7.8, find(loaded, "Сбербанк", 365).getDepositRate());
+        assertEquals(7.5, find(loaded, "Сбербанк", 90).getDepositRate());
+    }
+
+    @Test
+    void countsOnlyReplacedRowsAsDead() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        DataStorage storage = new DataStorage(file);
+        storage.saveData(List.of(row("ВТБ", 8.0, 365)));
+        // Те же значения не дописываются
+        storage.saveData(List.of(row("ВТБ", 8.0, 365)));
+        assertEquals(0, storage.getDeadRows());
+        assertEquals(2, Files.readAllLines(file).size());
+
+        storage.saveData(List.of(row("ВТБ", 8.2, 365), row("ВТБ", 8.4, 365), row("Альфа", 9.0, 365)));
+        assertEquals(2, storage.getDeadRows());
+
+        DataStorage reloaded = new DataStorage(file);
+        reloaded.loadData();
+        assertEquals(2, reloaded.getDeadRows());
+        assertEquals(8.4, find(reloaded.currentData(), "ВТБ", 365).getDepositRate());
+    }
+
+    @Test
+    void compactionKeepsLatestRowPerKey() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        DataStorage storage = new DataStorage(file);
+        storage.saveData(List.of(row("ВТБ", 8.0, 365), row("Альфа", 9.0, 365)));
+        storage.saveData(List.of(row("ВТБ", 8.5, 365)));
+
+        storage.compact();
+
+        assertEquals(0, storage.getDeadRows());
+        assertEquals(3, Files.readAllLines(file).size());
+        List<BankData> loaded = new DataStorage(file).loadData();
+        assertEquals(2, loaded.size());
+        assertEquals(8.5, find(loaded, "ВТБ", 365).getDepositRate());
+    }
+
+    @Test
+    void compactionRewritesLegacyRows() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        Files.writeString(file, BankDataCsvCodec.HEADER + "\n"
+                + "Сбербанк,7,50,12,00,8,25,2024-03-01,365\n"
+                + "ВТБ,8.00,13.00,9.00,2024-03-01,365\n");
+        DataStorage storage = new DataStorage(file);
+        assertEquals(2, storage.loadData().size());
+
+        storage.compact();
+
+        assertEquals(List.of(BankDataCsvCodec.HEADER,
+                        "Сбербанк,7.50,12.00,8.25,2024-03-01,365",
+                        "ВТБ,8.00,13.00,9.00,2024-03-01,365"),
+                Files.readAllLines(file));
+    }
+
+    @Test
+    void loadsSnapshotAndReplaysOnlyRowsAfterIt() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        DataStorage storage = new DataStorage(file);
+        storage.saveData(List.of(row("ВТБ", 8.0, 365), row("Альфа", 9.0, 365)));
+        storage.saveData(List.of(row("ВТБ", 8.5, 365)));
+        storage.compact();
+        assertTrue(Files.exists(dir.resolve("bank_data.bin")));
+
+        storage.saveData(List.of(row("ВТБ", 8.7, 365), row("Сбербанк", 7.5, 365)));
+
+        DataStorage reloaded = new DataStorage(file);
+        List<BankData> loaded = reloaded.loadData();
+        assertEquals(2, reloaded.getTailRows());
+        assertEquals(1, reloaded.getDeadRows());
+        assertEquals(3, loaded.size());
+        assertEquals(8.7, find(loaded, "ВТБ", 365).getDepositRate());
+        assertEquals(9.0, find(loaded, "Альфа", 365).getDepositRate());
+    }
+
+    @Test
+    void ignoresSnapshotOfAnotherJournal() throws IOException {
+        Path file = dir.resolve("bank_data.csv");
+        DataStorage storage = new DataStorage(file);
+        storage.saveData(List.of(row("ВТБ", 8.0, 365)));
+        storage.saveData(List.of(row("ВТБ", 8.5, 365)));
+        storage.compact();
+
+        Files.writeString(file, BankDataCsvCodec.HEADER + "\n"
+                + "Альфа,9.00,14.00,10.00,2024-03-01,365\n");
+
+        DataStorage reloaded = new DataStorage(file);
+        List<BankData> loaded = reloaded.loadData();
+        assertEquals(1, reloaded.getTailRows());
+        assertEquals(1, loaded.size());
+        assertEquals("Альфа", loaded.get(0).getBankName());
+    }
+
+    private static BankData find(List<BankData> rows, String bank, int term) {
+        return rows.stream()
+                .filter(r -> r.getBankName().equals(bank) && r.getTermDays() == term)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private static BankData row(String bank, double deposit, int term) {
+        return new BankData(bank, deposit, deposit + 5, deposit + 1, DAY, term);
+    }
+}
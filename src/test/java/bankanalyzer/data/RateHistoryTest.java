@@ -0,0 +1,213 @@
+package bankanalyzer.data;
+
+import bankanalyzer.data.RateHistory.Bucket;
+import bankanalyzer.data.RateHistory.Granularity;
+import bankanalyzer.data.RateHistory.Measure;
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Индекс сверяется с полным перебором наблюдений после случайных вставок и замен.
+ */
+class RateHistoryTest {
+    private static final String[] BANKS = {"Сбербанк", "ВТБ", "Альфа", "Газпромбанк", "Тинькофф"};
+    private static final int[] TERMS = {90, 180, 365};
+    // Диапазон захватывает смену года, високосный февраль и неделю на стыке месяцев
+    private static final LocalDate FIRST_DAY = LocalDate.of(2023, 11, 20);
+    private static final int DAYS = 150;
+
+    @Test
+    void weekStartsOnMonday() {
+        RateHistory history = new RateHistory();
+        history.add(row("ВТБ", LocalDate.of(2023, 12, 31), 365, 8.0));
+        history.add(row("ВТБ", LocalDate.of(2024, 1, 1), 365, 9.0));
+
+        List<Bucket> weeks = history.rollup(Granularity.WEEK, LocalDate.of(2023, 12, 31), LocalDate.of(2024, 1, 1));
+        assertEquals(2, weeks.size());
+        assertEquals(LocalDate.of(2023, 12, 25), weeks.get(0).getStart());
+        assertEquals(LocalDate.of(2023, 12, 31), weeks.get(0).getEnd());
+        assertEquals(LocalDate.of(2024, 1, 1), weeks.get(1).getStart());
+    }
+
+    @Test
+    void monthBucketsFollowCalendar() {
+        RateHistory history = new RateHistory();
+        history.add(row("ВТБ", LocalDate.of(2024, 2, 29), 365, 8.0));
+        history.add(row("ВТБ", LocalDate.of(2024, 3, 1), 365, 9.0));
+
+        List<Bucket> months = history.rollup("ВТБ", Granularity.MONTH, LocalDate.of(2024, 2, 1), LocalDate.of(2024, 3, 31));
+        assertEquals(2, months.size());
+        assertEquals(LocalDate.of(2024, 2, 29), months.get(0).getEnd());
+        assertEquals(8.0, months.get(0).getMax(Measure.DEPOSIT_RATE));
+        assertEquals(LocalDate.of(2024, 3, 1), months.get(1).getStart());
+    }
+
+    @Test
+    void replacementRecomputesMinAndMax() {
+        RateHistory history = new RateHistory();
+        LocalDate day = LocalDate.of(2024, 3, 4);
+        history.add(row("ВТБ", day, 365, 8.0));
+        history.add(row("Альфа", day, 365, 9.0));
+        history.add(row("Альфа", day, 365, 7.0));
+
+        Bucket week = history.rollup(Granularity.WEEK, day, day).get(0);
+        assertEquals(2, week.getCount());
+        assertEquals(8.0, week.getMax(Measure.DEPOSIT_RATE));
+        assertEquals("ВТБ", week.getMaxBank(Measure.DEPOSIT_RATE));
+        assertEquals(7.0, week.getMin(Measure.DEPOSIT_RATE));
+        assertEquals("Альфа", week.getMinBank(Measure.DEPOSIT_RATE));
+    }
+
+    @Test
+    void matchesBruteForceAfterRandomInsertsAndReplacements() {
+        Random random = new Random(42);
+        RateHistory history = new RateHistory();
+        Map<String, BankData> expected = new LinkedHashMap<>();
+
+        for (int i = 1; i <= 4000; i++) {
+            BankData item;
+            if (!expected.isEmpty() && random.nextInt(10) < 3) {
+                // Замена уже известного наблюдения
+                List<BankData> known = new ArrayList<>(expected.values());
+                BankData old = known.get(random.nextInt(known.size()));
+                item = row(old.getBankName(), old.getDate(), old.getTermDays(), random);
+            } else {
+                // Даты в случайном порядке: вставки в середину рядов
+                item = row(BANKS[random.nextInt(BANKS.length)], FIRST_DAY.plusDays(random.nextInt(DAYS)),
+                        TERMS[random.nextInt(TERMS.length)], random);
+            }
+            history.add(item);
+            expected.put(key(item), item);
+
+            if (i % 500 == 0) {
+                verify(history, new ArrayList<>(expected.values()), random);
+            }
+        }
+        verify(RateHistory.of(expected.values()), new ArrayList<>(expected.values()), random);
+    }
+
+    private static void verify(RateHistory history, List<BankData> rows, Random random) {
+        assertEquals(rows.size(), history.size());
+        for (int q = 0; q < 20; q++) {
+            LocalDate from = FIRST_DAY.plusDays(random.nextInt(DAYS + 10) - 5);
+            LocalDate to = from.plusDays(random.nextInt(60));
+            for (String bank : BANKS) {
+                List<BankData> own = rows.stream().filter(r -> r.getBankName().equals(bank)).collect(Collectors.toList());
+                verifySeries(history.series(bank, from, to), own, from, to);
+                for (Granularity granularity : Granularity.values()) {
+                    verifyBuckets(history.rollup(bank, granularity, from, to), own, granularity, from, to);
+                }
+            }
+            for (Granularity granularity : Granularity.values()) {
+                verifyBuckets(history.rollup(granularity, from, to), rows, granularity, from, to);
+            }
+        }
+    }
+
+    private static void verifySeries(RateTable actual, List<BankData> rows, LocalDate from, LocalDate to) {
+        List<BankData> expected = rows.stream()
+                .filter(r -> !r.getDate().isBefore(from) && !r.getDate().isAfter(to))
+                .sorted(Comparator.comparing(BankData::getDate).thenComparingInt(BankData::getTermDays))
+                .collect(Collectors.toList());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            BankData row = expected.get(i);
+            assertEquals(row.getDate().toEpochDay(), actual.epochDay(i));
+            assertEquals(row.getTermDays(), actual.termDays(i));
+            assertEquals(row.getDepositRate(), actual.depositRate(i));
+            assertEquals(row.getLoanRate(), actual.loanRate(i));
+            assertEquals(row.getInvestmentReturn(), actual.investmentReturn(i));
+        }
+    }
+
+    private static void verifyBuckets(List<Bucket> actual, List<BankData> rows, Granularity granularity,
+                                      LocalDate from, LocalDate to) {
+        // Корзины, пересекающие [from, to], целиком
+        TreeMap<LocalDate, List<BankData>> expected = new TreeMap<>();
+        for (BankData row : rows) {
+            LocalDate start = bucketStart(row.getDate(), granularity);
+            if (!start.isAfter(to) && !bucketEnd(start, granularity).isBefore(from)) {
+                expected.computeIfAbsent(start, s -> new ArrayList<>()).add(row);
+            }
+        }
+
+        assertEquals(new ArrayList<>(expected.keySet()),
+                actual.stream().map(Bucket::getStart).collect(Collectors.toList()), granularity + " " + from + ".." + to);
+        for (Bucket bucket : actual) {
+            List<BankData> members = expected.get(bucket.getStart());
+            assertEquals(bucketEnd(bucket.getStart(), granularity), bucket.getEnd());
+            assertEquals(members.size(), bucket.getCount());
+            verifyMeasure(bucket, members, Measure.DEPOSIT_RATE, BankData::getDepositRate);
+            verifyMeasure(bucket, members, Measure.LOAN_RATE, BankData::getLoanRate);
+            verifyMeasure(bucket, members, Measure.INVESTMENT_RETURN, BankData::getInvestmentReturn);
+            verifyMeasure(bucket, members, Measure.SPREAD, r -> r.getLoanRate() - r.getDepositRate());
+        }
+    }
+
+    private static void verifyMeasure(Bucket bucket, List<BankData> members, Measure measure,
+                                      ToDoubleFunction<BankData> value) {
+        double min = members.stream().mapToDouble(value).min().orElseThrow();
+        double max = members.stream().mapToDouble(value).max().orElseThrow();
+        double average = members.stream().mapToDouble(value).average().orElseThrow();
+        assertEquals(min, bucket.getMin(measure));
+        assertEquals(max, bucket.getMax(measure));
+        assertEquals(average, bucket.getAverage(measure), 1e-9);
+        // При равных значениях подходит любой из банков с экстремумом
+        assertTrue(members.stream().anyMatch(r -> r.getBankName().equals(bucket.getMinBank(measure))
+                && value.applyAsDouble(r) == min), measure + " minBank");
+        assertTrue(members.stream().anyMatch(r -> r.getBankName().equals(bucket.getMaxBank(measure))
+                && value.applyAsDouble(r) == max), measure + " maxBank");
+    }
+
+    private static LocalDate bucketStart(LocalDate date, Granularity granularity) {
+        switch (granularity) {
+            case DAY:
+                return date;
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            default:
+                return date.withDayOfMonth(1);
+        }
+    }
+
+    private static LocalDate bucketEnd(LocalDate start, Granularity granularity) {
+        switch (granularity) {
+            case DAY:
+                return start;
+            case WEEK:
+                return start.plusDays(6);
+            default:
+                return start.with(TemporalAdjusters.lastDayOfMonth());
+        }
+    }
+
+    private static BankData row(String bank, LocalDate date, int term, Random random) {
+        // Два знака, как в журнале: так чаще встречаются равные значения
+        double deposit = 5 + random.nextInt(800) / 100.0;
+        double loan = deposit + 3 + random.nextInt(300) / 100.0;
+        return new BankData(bank, deposit, loan, deposit + random.nextInt(200) / 100.0, date, term);
+    }
+
+    private static String key(BankData row) {
+        return row.getBankName() + '|' + row.getDate() + '|' + row.getTermDays();
+    }
+
+    private static BankData row(String bank, LocalDate date, int term, double deposit) {
+        return new BankData(bank, deposit, deposit + 4.5, deposit + 1.25, date, term);
+    }
+}
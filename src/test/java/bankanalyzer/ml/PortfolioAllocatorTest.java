@@ -0,0 +1,111 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.BankData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PortfolioAllocatorTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    @Test
+    void capsEveryBankAtInsuranceLimit() {
+        List<BankData> products = List.of(
+                product("Альфа", 365, 12.0),
+                product("ВТБ", 365, 11.0),
+                product("Сбербанк", 365, 10.0));
+
+        PortfolioAllocation allocation = new PortfolioAllocator().allocate(products, 3_000_000, 365);
+
+        List<PortfolioAllocation.Position> positions = allocation.getPositions();
+        assertEquals(3, positions.size());
+        assertPosition(positions.get(0), "Альфа", 1_400_000);
+        assertPosition(positions.get(1), "ВТБ", 1_400_000);
+        assertPosition(positions.get(2), "Сбербанк", 200_000);
+        assertEquals(0, allocation.getUnallocated(), 1e-6);
+        assertEquals(1_400_000 * 0.12 + 1_400_000 * 0.11 + 200_000 * 0.10, allocation.getExpectedProfit(), 1e-6);
+    }
+
+    @Test
+    void reportsAmountBeyondTotalCapacityAsUnallocated() {
+        List<BankData> products = List.of(product("Альфа", 365, 12.0), product("ВТБ", 365, 11.0));
+
+        PortfolioAllocation allocation = new PortfolioAllocator().allocate(products, 5_000_000, 365);
+
+        assertEquals(2, allocation.getPositions().size());
+        assertEquals(2_200_000, allocation.getUnallocated(), 1e-6);
+    }
+
+    @Test
+    void spreadsAmountOverMinBanks() {
+        List<BankData> products = List.of(
+                product("Альфа", 365, 12.0),
+                product("ВТБ", 365, 11.0),
+                product("Сбербанк", 365, 10.0),
+                product("Газпромбанк", 365, 9.0));
+
+        PortfolioAllocation allocation = new PortfolioAllocator(1_400_000, 3, 0.25).allocate(products, 900_000, 365);
+
+        List<PortfolioAllocation.Position> positions = allocation.getPositions();
+        assertEquals(3, positions.size());
+        assertPosition(positions.get(0), "Альфа", 300_000);
+        assertPosition(positions.get(1), "ВТБ", 300_000);
+        assertPosition(positions.get(2), "Сбербанк", 300_000);
+        assertTrue(allocation.isMinBanksSatisfied());
+    }
+
+    @Test
+    void splitsOverAvailableBanksWhenFewerThanMinBanks() {
+        List<BankData> products = List.of(product("Альфа", 365, 12.0), product("ВТБ", 365, 11.0));
+
+        PortfolioAllocation allocation = new PortfolioAllocator(1_400_000, 5, 0.25).allocate(products, 1_000_000, 365);
+
+        List<PortfolioAllocation.Position> positions = allocation.getPositions();
+        assertEquals(2, positions.size());
+        assertPosition(positions.get(0), "Альфа", 500_000);
+        assertPosition(positions.get(1), "ВТБ", 500_000);
+        assertEquals(0, allocation.getUnallocated(), 1e-6);
+        assertFalse(allocation.isMinBanksSatisfied());
+    }
+
+    @Test
+    void prefersTermMatchAndFallsBackToClosestTerm() {
+        List<BankData> products = List.of(
+                // У Альфы подходящий срок важнее более доходного короткого вклада
+                product("Альфа", 365, 9.0),
+                product("Альфа", 90, 14.0),
+                // 300 дней — в пределах 25% от 365
+                product("ВТБ", 300, 8.0),
+                // У Сбербанка подходящего срока нет: берётся ближайший, 180 дней
+                product("Сбербанк", 30, 15.0),
+                product("Сбербанк", 180, 13.0));
+
+        PortfolioAllocation allocation = new PortfolioAllocator().allocate(products, 4_000_000, 365);
+
+        List<PortfolioAllocation.Position> positions = allocation.getPositions();
+        assertEquals(3, positions.size());
+        assertPosition(positions.get(0), "Альфа", 1_400_000);
+        assertEquals(365, positions.get(0).getProduct().getTermDays());
+        assertTrue(positions.get(0).isTermMatched());
+        assertPosition(positions.get(1), "ВТБ", 1_400_000);
+        assertTrue(positions.get(1).isTermMatched());
+        // Банк без подходящего срока заполняется последним, несмотря на большую доходность
+        assertPosition(positions.get(2), "Сбербанк", 1_200_000);
+        assertEquals(180, positions.get(2).getProduct().getTermDays());
+        assertFalse(positions.get(2).isTermMatched());
+    }
+
+    private static void assertPosition(PortfolioAllocation.Position position, String bank, double amount) {
+        assertEquals(bank, position.getProduct().getBankName());
+        assertEquals(amount, position.getAmount(), 1e-6);
+    }
+
+    private static BankData product(String bank, int term, double expectedReturn) {
+        return new BankData(bank, expectedReturn - 1, expectedReturn + 5, expectedReturn, DAY, term);
+    }
+}
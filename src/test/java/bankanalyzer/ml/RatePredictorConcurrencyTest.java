@@ -0,0 +1,129 @@
+package bankanalyzer.ml;
+
+import bankanalyzer.data.RateTable;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочная проверка прогнозов из нескольких потоков — в простое и во время полного
+ * переобучения. Без {@code NATIVE_LOCK} в ND4J 1.0.0-M2 этот сценарий ронял JVM примерно
+ * в половине запусков; при обновлении ND4J или переходе на ParallelInference блокировку
+ * стоит пересматривать именно по этому тесту.
+ *
+ * Не входит в обычный прогон ({@code mvn -Pstress test}): в 1.0.0-M2 JVM изредка падает
+ * и с блокировкой — сборщик мусора освобождает нативный буфер посреди {@code output()},
+ * что воспроизводится даже в одном потоке на голом MultiLayerNetwork при частых сборках.
+ */
+@Tag("stress")
+class RatePredictorConcurrencyTest {
+    private static final int THREADS = 4;
+    private static final int CALLS_PER_THREAD = 25;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void concurrentPredictionsMatchSingleThreadedRun() throws Exception {
+        RateTable data = history();
+        RatePredictor predictor = newPredictor();
+        predictor.trainModel(data);
+        double[] expected = predictor.predictReturns(data);
+
+        List<double[]> results = predictConcurrently(predictor, data, () -> false);
+
+        assertEquals(THREADS * CALLS_PER_THREAD, results.size());
+        for (double[] result : results) {
+            assertArrayEquals(expected, result);
+        }
+    }
+
+    @Test
+    void predictionsDuringRetrainSeeEitherModel() throws Exception {
+        RateTable data = history();
+        RatePredictor predictor = newPredictor();
+        predictor.trainModel(data);
+        double[] before = predictor.predictReturns(data);
+
+        AtomicBoolean training = new AtomicBoolean(true);
+        Thread trainer = new Thread(() -> {
+            try {
+                predictor.trainModel(data);
+            } finally {
+                training.set(false);
+            }
+        }, "retrain");
+        trainer.start();
+        // Прогнозы идут не меньше заданного числа вызовов и до конца обучения
+        List<double[]> results = predictConcurrently(predictor, data, training::get);
+        trainer.join();
+        double[] after = predictor.predictReturns(data);
+
+        for (double[] result : results) {
+            assertTrue(Arrays.equals(before, result) || Arrays.equals(after, result),
+                    "Прогноз не совпал ни со старой, ни с новой моделью");
+        }
+    }
+
+    private RatePredictor newPredictor() {
+        return new RatePredictor(dir.resolve("model.zip").toString(), Duration.ofDays(1));
+    }
+
+    private static List<double[]> predictConcurrently(RatePredictor predictor, RateTable data,
+                                                      BooleanSupplier keepGoing)
+            throws Exception {
+        Callable<List<double[]>> worker = () -> {
+            List<double[]> out = new ArrayList<>();
+            while (out.size() < CALLS_PER_THREAD || keepGoing.getAsBoolean()) {
+                out.add(predictor.predictReturns(data));
+            }
+            return out;
+        };
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<double[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(pool.submit(worker));
+            }
+            List<double[]> results = new ArrayList<>();
+            for (Future<List<double[]>> future : futures) {
+                results.addAll(future.get(5, TimeUnit.MINUTES));
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static RateTable history() {
+        RateTable table = new RateTable();
+        Random random = new Random(1);
+        LocalDate start = LocalDate.of(2023, 1, 1);
+        for (int day = 0; day < 200; day++) {
+            for (String bank : new String[]{"Альфа", "ВТБ", "Сбербанк"}) {
+                table.add(bank, 10 + random.nextDouble() * 5, 15 + random.nextDouble() * 5,
+                        12 + random.nextDouble() * 4, (int) start.plusDays(day).toEpochDay(), 365);
+            }
+        }
+        return table;
+    }
+}